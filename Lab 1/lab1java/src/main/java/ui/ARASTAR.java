@@ -0,0 +1,264 @@
+package ui;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Anytime repairing A* (ARA*). A series of weighted A* searches with f = g + w * h, where
+ * the weight w starts inflated and drops towards 1. A weighted search finds a solution of
+ * at most w times the optimal cost after far fewer expansions. Instead of starting over,
+ * every search continues from the open states of the previous one plus the states whose
+ * cost improved after they were closed, so no state is expanded twice within a search.
+ * <p>
+ * Every solution carries its suboptimality bound, the best of w and the ratio of its cost
+ * to the smallest g + h of all states that may still improve. When the time budget runs
+ * out the best solution so far is returned.
+ */
+public class ARASTAR {
+
+    private static final double WEIGHT_STEP = 0.5;
+    //the clock is read once per this many expansions
+    private static final int CLOCK_INTERVAL = 256;
+
+    private final double initialWeight;
+    private final long budgetMillis;
+
+    /**
+     * @param initialWeight weight on h of the first search, at least 1
+     * @param budgetMillis time budget of the whole search, 0 or less for none
+     */
+    public ARASTAR(double initialWeight, long budgetMillis) {
+        if (initialWeight < 1) {
+            throw new IllegalArgumentException("Weight must be at least 1, was " + initialWeight);
+        }
+        this.initialWeight = initialWeight;
+        this.budgetMillis = budgetMillis;
+    }
+
+    public void runAlgorithm(String filePathStateSpace, String filePathHeuristics) throws IOException {
+
+        StateSpace space = StateSpace.load(filePathStateSpace);
+
+        //without a heuristic file, use the heuristic that comes with the state space
+        Heuristic heuristic = filePathHeuristics != null ? space.openHeuristics(filePathHeuristics) : space.getHeuristics();
+        String heuristicName = filePathHeuristics != null ? filePathHeuristics : filePathStateSpace;
+
+        SearchResult result = search(space, heuristic, solution -> { });
+        System.out.println(result.format("# ARA-STAR " + heuristicName, space));
+    }
+
+    public SearchResult search(StateGraph graph, int startState, BitSet goalStates, Heuristic heuristic) {
+        return search(graph.withEndpoints(startState, goalStates), heuristic, solution -> { });
+    }
+
+    /**
+     * Runs the weighted searches until the weight reaches 1 or the time budget runs out.
+     *
+     * @param space state space
+     * @param heuristic admissible heuristic
+     * @param onSolution called with every solution that improves on the previous one
+     * @return best solution found, with its weight, bound and all earlier solutions as details
+     */
+    public SearchResult search(StateSpace space, Heuristic heuristic, Consumer<SearchResult> onSolution) {
+
+        long deadline = budgetMillis > 0 ? System.nanoTime() + budgetMillis * 1_000_000 : Long.MAX_VALUE;
+        int statesVisited = 0;
+        int iterations = 0;
+
+        StateIndex states = StateIndex.of(space);
+        Successors successors = new Successors();
+        int startSlot = states.add(space.getInitialState());
+
+        int[] parents = new int[states.capacity()];
+        double[] costs = new double[states.capacity()];
+        double[] estimates = new double[states.capacity()];
+        int[] closedIn = new int[states.capacity()];
+        boolean[] inconsistent = new boolean[states.capacity()];
+        Arrays.fill(costs, Double.POSITIVE_INFINITY);
+
+        IndexedMinHeap open = new IndexedMinHeap(states.capacity());
+        ArrayList<Integer> inconsistentStates = new ArrayList<>();
+
+        costs[startSlot] = 0;
+        estimates[startSlot] = heuristic.estimate(space.getInitialState());
+
+        int goalSlot = space.isGoal(space.getInitialState()) ? startSlot : -1;
+        double weight = initialWeight;
+        SearchResult best = null;
+        double bestBound = Double.POSITIVE_INFINITY;
+        StringJoiner solutions = new StringJoiner(", ");
+
+        while (true) {
+
+            //start the search for this weight from the open and the inconsistent states
+            iterations++;
+            int[] previousOpen = new int[open.size()];
+            for (int i = 0; i < previousOpen.length; i++) {
+                previousOpen[i] = open.get(i);
+            }
+            open.clear();
+            for (int slot : previousOpen) {
+                open.insert(slot, costs[slot] + weight * estimates[slot]);
+            }
+            for (int slot : inconsistentStates) {
+                inconsistent[slot] = false;
+                open.insert(slot, costs[slot] + weight * estimates[slot]);
+            }
+            inconsistentStates.clear();
+            if (iterations == 1) {
+                open.insert(startSlot, weight * estimates[startSlot]);
+            }
+
+            boolean outOfTime = false;
+            while (!open.isEmpty()) {
+
+                //the solution is good enough for this weight once nothing open can beat it
+                int currentSlot = open.peek();
+                if (goalSlot >= 0 && costs[goalSlot] <= open.getKey(currentSlot))
+                    break;
+
+                if (statesVisited % CLOCK_INTERVAL == 0 && System.nanoTime() > deadline) {
+                    outOfTime = true;
+                    break;
+                }
+
+                open.poll();
+                closedIn[currentSlot] = iterations;
+                statesVisited++;
+
+                long currentState = states.getState(currentSlot);
+                if (space.isGoal(currentState))
+                    continue;
+
+                space.successors(currentState, successors);
+                for (int i = 0; i < successors.size(); i++) {
+
+                    long neighbourState = successors.getState(i);
+                    int neighbour = states.add(neighbourState);
+
+                    if (neighbour == parents.length) {
+                        int capacity = states.capacity();
+                        parents = Arrays.copyOf(parents, capacity);
+                        costs = Arrays.copyOf(costs, capacity);
+                        estimates = Arrays.copyOf(estimates, capacity);
+                        closedIn = Arrays.copyOf(closedIn, capacity);
+                        inconsistent = Arrays.copyOf(inconsistent, capacity);
+                        Arrays.fill(costs, neighbour, capacity, Double.POSITIVE_INFINITY);
+                    }
+
+                    double cost = costs[currentSlot] + successors.getCost(i);
+                    if (cost >= costs[neighbour])
+                        continue;
+
+                    if (costs[neighbour] == Double.POSITIVE_INFINITY) {
+                        estimates[neighbour] = heuristic.estimate(neighbourState);
+                    }
+                    costs[neighbour] = cost;
+                    parents[neighbour] = currentSlot;
+
+                    if (space.isGoal(neighbourState) && (goalSlot < 0 || cost < costs[goalSlot])) {
+                        goalSlot = neighbour;
+                    }
+
+                    //a state closed in this search waits for the next one
+                    if (closedIn[neighbour] == iterations) {
+                        if (!inconsistent[neighbour]) {
+                            inconsistent[neighbour] = true;
+                            inconsistentStates.add(neighbour);
+                        }
+                    } else if (open.contains(neighbour)) {
+                        open.decreaseKey(neighbour, cost + weight * estimates[neighbour]);
+                    } else {
+                        open.insert(neighbour, cost + weight * estimates[neighbour]);
+                    }
+                }
+            }
+
+            if (goalSlot >= 0) {
+
+                double goalCost = pathCost(space, states, parents, startSlot, goalSlot, successors);
+                double bound = suboptimalityBound(goalCost, open, inconsistentStates, costs, estimates);
+                if (!outOfTime) {
+                    bound = Math.min(bound, weight);
+                }
+
+                if (best == null || goalCost < best.getTotalCost()) {
+                    best = SearchResult.found(statesVisited, goalCost, parents, startSlot, goalSlot, states)
+                            .addDetail("WEIGHT", weight)
+                            .addDetail("SUBOPTIMALITY_BOUND", bound);
+                    solutions.add(goalCost + " (" + bound + ")");
+                    onSolution.accept(best);
+                } else if (bound < bestBound) {
+                    //a later search that found nothing better still proves the solution closer to optimal
+                    best.addDetail("SUBOPTIMALITY_BOUND", bound);
+                }
+                bestBound = Math.min(bestBound, bound);
+            }
+
+            if (outOfTime || weight == 1 || open.isEmpty() && inconsistentStates.isEmpty())
+                break;
+            weight = Math.max(1, weight - WEIGHT_STEP);
+        }
+
+        if (best == null) {
+            return SearchResult.notFound(statesVisited).addDetail("ITERATIONS", iterations);
+        }
+        return best.addDetail("ITERATIONS", iterations)
+                .addDetail("SOLUTIONS", solutions);
+    }
+
+    /**
+     * Sums the path along the parent links. States on it can have improved since the goal
+     * was reached, so the path can be cheaper than the cost recorded for the goal. The
+     * costs are added from the start, in the same order as {@link SearchResult#ofPath}.
+     */
+    private static double pathCost(StateSpace space, StateIndex states, int[] parents, int startSlot, int goalSlot,
+                                   Successors successors) {
+
+        int pathLength = 1;
+        for (int slot = goalSlot; slot != startSlot; slot = parents[slot]) {
+            pathLength++;
+        }
+        int[] path = new int[pathLength];
+        int slot = goalSlot;
+        for (int i = pathLength - 1; i > 0; i--) {
+            path[i] = slot;
+            slot = parents[slot];
+        }
+        path[0] = startSlot;
+
+        double cost = 0;
+        for (int i = 1; i < pathLength; i++) {
+            long state = states.getState(path[i]);
+            space.successors(states.getState(path[i - 1]), successors);
+
+            double edgeCost = Double.POSITIVE_INFINITY;
+            for (int j = 0; j < successors.size(); j++) {
+                if (successors.getState(j) == state) {
+                    edgeCost = Math.min(edgeCost, successors.getCost(j));
+                }
+            }
+            cost += edgeCost;
+        }
+        return cost;
+    }
+
+    /**
+     * An optimal path passes through a state that is open or inconsistent, with its optimal
+     * cost as g, so the smallest g + h among them bounds the optimal cost from below.
+     */
+    private static double suboptimalityBound(double cost, IndexedMinHeap open, List<Integer> inconsistentStates,
+                                             double[] costs, double[] estimates) {
+
+        double lowerBound = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < open.size(); i++) {
+            lowerBound = Math.min(lowerBound, costs[open.get(i)] + estimates[open.get(i)]);
+        }
+        for (int slot : inconsistentStates) {
+            lowerBound = Math.min(lowerBound, costs[slot] + estimates[slot]);
+        }
+        return lowerBound >= cost ? 1 : cost / lowerBound;
+    }
+
+}
@@ -1,299 +1,288 @@
 package ui;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class ASTAR {
 
-    private Node startNode;
-    private HashSet<String> goalStateNames;
-    private HashMap<Node, TreeSet<Node>> allStates;
-    private HashMap<String, Double> heuristicsMap;
-
-    private class Node implements Comparable<Node>{
-        private final String name;
-        private double cost;
-        private double heuristic;
-        private Node parent;
-        private TreeSet<Node> neighbours;
-
-        public Node(String name, double cost, double heuristic) {
-            this.name = name;
-            this.cost = cost;
-            this.heuristic = heuristic;
-            this.parent = null;
-            this.neighbours = new TreeSet<>();
-        }
-
-        public String getName() {
-            return name;
-        }
+    private final boolean pruneDeadEnds;
+    private final boolean keepStats;
 
-        public double getCost() {
-            return cost;
-        }
+    public ASTAR() {
+        this(false);
+    }
 
-        public void setCost(double cost) {
-            this.cost = cost;
-        }
+    /**
+     * @param pruneDeadEnds skip states that cannot reach a goal, for the goal states of the
+     *                      graph itself
+     */
+    public ASTAR(boolean pruneDeadEnds) {
+        this(pruneDeadEnds, false);
+    }
 
-        public void increaseCost(double cost) {
-            this.cost += cost;
-        }
+    /**
+     * @param pruneDeadEnds skip states that cannot reach a goal, for the goal states of the
+     *                      graph itself
+     * @param keepStats attach the counters of every search to its result
+     */
+    public ASTAR(boolean pruneDeadEnds, boolean keepStats) {
+        this.pruneDeadEnds = pruneDeadEnds;
+        this.keepStats = keepStats;
+    }
 
-        public double getHeuristic() {
-            return heuristic;
-        }
+    public SearchResult runAlgorithm(String filePathStateSpace, String filePathHeuristics) throws IOException {
 
-        public Node getParent() {
-            return parent;
-        }
+        long[] loadNanos = new long[1];
+        StateSpace space = SearchStats.load(filePathStateSpace, loadNanos);
 
-        public void setParent(Node parent) {
-            this.parent = parent;
-        }
+        //without a heuristic file, use the heuristic that comes with the state space
+        Heuristic heuristic = filePathHeuristics != null ? space.openHeuristics(filePathHeuristics) : space.getHeuristics();
+        String heuristicName = filePathHeuristics != null ? filePathHeuristics : filePathStateSpace;
 
-        public TreeSet<Node> getNeighbours() {
-            return neighbours;
+        SearchResult result = search(space, heuristic);
+        if (result.getStats() != null) {
+            result.getStats().setLoadNanos(loadNanos[0]);
         }
+        System.out.println(result.format("# A-STAR " + heuristicName, space));
+        return result;
+    }
 
-        public void appendNeighbour(Node neighbour) {
-            this.neighbours.add(neighbour);
+    /**
+     * Runs one search per heuristic on a single loaded state space and prints a table with
+     * the outcome of every heuristic. The searches only read the shared state space, each
+     * opens its own heuristic and keeps its own open and closed lists.
+     *
+     * @param filePathStateSpace state space to load once
+     * @param filePathsHeuristics heuristics to compare, printed in this order
+     * @param threads number of searches that run at the same time
+     * @throws IOException if the state space or a heuristic cannot be read
+     */
+    public void runComparison(String filePathStateSpace, List<String> filePathsHeuristics, int threads)
+            throws IOException {
+
+        long wallStart = System.nanoTime();
+        StateSpace space = StateSpace.load(filePathStateSpace);
+
+        ArrayList<Callable<SearchResult>> searches = new ArrayList<>();
+        for (String filePathHeuristics : filePathsHeuristics) {
+            searches.add(() -> {
+                Heuristic heuristic = space.openHeuristics(filePathHeuristics);
+                long start = System.nanoTime();
+                SearchResult result = search(space, heuristic);
+                return result.addDetail("TIME_MS", String.format(Locale.US, "%.3f", (System.nanoTime() - start) / 1e6));
+            });
         }
 
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
-            Node node = (Node) o;
-            return name.equals(node.name);
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, searches.size())));
+        ArrayList<SearchResult> results = new ArrayList<>();
+        try {
+            for (Future<SearchResult> search : pool.invokeAll(searches)) {
+                results.add(search.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } finally {
+            pool.shutdown();
         }
 
-        @Override
-        public int hashCode() {
-            return Objects.hash(name);
+        int nameWidth = "HEURISTIC".length();
+        for (String filePathHeuristics : filePathsHeuristics) {
+            nameWidth = Math.max(nameWidth, filePathHeuristics.length());
         }
-
-        @Override
-        public int compareTo(Node other) {
-            if ((this.cost + this.heuristic) == (other.cost + other.heuristic)) {
-                return this.name.compareTo(other.name);
-            } else {
-                return Double.compare((this.cost + this.heuristic), (other.cost + other.heuristic));
-            }
+        String row = "%-" + nameWidth + "s  %-5s  %14s  %12s  %10s";
+
+        System.out.println("# A-STAR COMPARISON " + filePathStateSpace);
+        System.out.println(String.format(Locale.US, row, "HEURISTIC", "FOUND", "STATES_VISITED", "TOTAL_COST", "TIME_MS"));
+        for (int i = 0; i < results.size(); i++) {
+            SearchResult result = results.get(i);
+            System.out.println(String.format(Locale.US, row, filePathsHeuristics.get(i),
+                    result.isFoundSolution() ? "yes" : "no", result.getStatesVisited(),
+                    result.isFoundSolution() ? String.valueOf(result.getTotalCost()) : "-",
+                    result.getDetails().get("TIME_MS")));
         }
-
+        System.out.println("[HEURISTICS]: " + results.size());
+        System.out.println("[WALL_TIME_MS]: " + String.format(Locale.US, "%.3f", (System.nanoTime() - wallStart) / 1e6));
     }
 
-    private void setHeuristicsMap(String filePath) throws IOException {
-
-        heuristicsMap = new HashMap<>();
-        BufferedReader reader = new BufferedReader(new FileReader(filePath));
-
-        String line = reader.readLine();
-        while (line != null) {
-
-            if (line.startsWith("#")) {
-                line = reader.readLine();
-            }
-
-            String[] stateAndHeuristic = line.split(": ");
-            heuristicsMap.put(stateAndHeuristic[0], Double.parseDouble(stateAndHeuristic[1]));
-            line = reader.readLine();
-        }
-
+    /**
+     * Searches an explicit graph in the workspace of the current thread, so repeated
+     * queries only touch the states they reach and allocate nothing but the result.
+     */
+    public SearchResult search(StateGraph graph, int startState, BitSet goalStates, Heuristic heuristic) {
+        SearchStats stats = SearchStats.start("A-STAR");
+        return stats.finish(search(graph, startState, goalStates, heuristic, stats), keepStats);
     }
 
-    private void argumentsInit(String filePath) throws IOException {
-
-        BufferedReader reader = new BufferedReader(new FileReader(filePath));
+    private SearchResult search(StateGraph graph, int startState, BitSet goalStates, Heuristic heuristic,
+                                SearchStats stats) {
 
-        String line = reader.readLine();
-        while (line.startsWith("#")) {
-            line = reader.readLine();
+        BitSet goalReachable = pruneDeadEnds ? graph.getGoalReachable(goalStates) : null;
+        if (goalReachable != null && !goalReachable.get(startState)) {
+            return SearchResult.notFound(0);
         }
 
-        String startNodeName = line;
+        int statesVisited = -1; //on start first node will set it to 0
 
-        line = reader.readLine();
-        while (line.startsWith("#")) {
-            line = reader.readLine();
-        }
+        SearchWorkspace workspace = SearchWorkspace.acquire(graph.getStateCount());
+        IndexedMinHeap open = workspace.heap();
+        workspace.reach(startState, 0, -1);
+        open.insert(startState, heuristic.estimate(startState));
+        stats.opened();
+
+        while (!open.isEmpty()) {
+            int currentState = open.poll();
+            workspace.close(currentState);
+            stats.polled();
+            stats.closed++;
+            statesVisited++;
 
-        String[] goalStateNames = line.split(" ");
-        this.goalStateNames = new HashSet<>();
-        this.goalStateNames.addAll(Arrays.asList(goalStateNames));
+            //check if currentNode is a goal state
+            if (goalStates.get(currentState)) {
+                return SearchResult.found(statesVisited, workspace.getCost(currentState), workspace.getParents(),
+                        startState, currentState);
+            }
 
-        allStates = new HashMap<>();
+            stats.generated += graph.getEdgesEnd(currentState) - graph.getEdgesBegin(currentState);
+            for (int edge = graph.getEdgesBegin(currentState); edge < graph.getEdgesEnd(currentState); edge++) {
 
-        line = reader.readLine();
-        while (line != null) {
+                int neighbour = graph.getEdgeTarget(edge);
+                if (goalReachable != null && !goalReachable.get(neighbour))
+                    continue;
+                double cost = workspace.getCost(currentState) + graph.getEdgeCost(edge);
 
-            if(line.startsWith("#")){
-                line = reader.readLine();
-            }
+                if (workspace.isClosed(neighbour)) {
 
-            String[] stateAndNeighbours = line.split(": ");
+                    //an inconsistent heuristic can close a state too early, reopen it
+                    if (cost >= workspace.getCost(neighbour))
+                        continue;
+                    workspace.reopen(neighbour);
+                    open.insert(neighbour, cost + heuristic.estimate(neighbour));
+                    stats.opened();
+                    stats.reopened++;
+                    stats.closed--;
 
-            if(stateAndNeighbours.length == 1) {
-                stateAndNeighbours[0] = stateAndNeighbours[0].substring(0, stateAndNeighbours[0].length() - 1);
-            }
+                } else if (open.contains(neighbour)) {
 
-            Node newNode = new Node(stateAndNeighbours[0], 0, heuristicsMap.get(stateAndNeighbours[0]));
+                    if (cost > workspace.getCost(neighbour))
+                        continue;
+                    open.decreaseKey(neighbour, cost + heuristic.estimate(neighbour));
 
-            if(stateAndNeighbours.length > 1) {
-                String neighboursUnsplit = stateAndNeighbours[1];
-                String[] neighbours = neighboursUnsplit.split(" ");
+                } else {
 
-                for (String neighbour : neighbours) {
-                    String[] nameAndCost = neighbour.split(",");
-                    String name = nameAndCost[0];
-                    double cost = Double.parseDouble(nameAndCost[1]);
+                    open.insert(neighbour, cost + heuristic.estimate(neighbour));
+                    stats.opened();
 
-                    Node neigbourNode = new Node(name, cost, heuristicsMap.get(name));
-                    newNode.appendNeighbour(neigbourNode);
                 }
-            }
 
-            allStates.put(newNode, newNode.getNeighbours());
-            if(newNode.getName().equals(startNodeName)) {
-                startNode = new Node(newNode.getName(), newNode.getCost(), newNode.getHeuristic());
-                for(Node neighbour : newNode.getNeighbours()) {
-                    startNode.appendNeighbour(neighbour);
-                }
+                workspace.reach(neighbour, cost, currentState);
             }
-            line = reader.readLine();
         }
 
-        reader.close();
+        return SearchResult.notFound(statesVisited);
     }
 
-    public void createNodePath(LinkedList<Node> nodePath, Node node) {
+    public SearchResult search(StateSpace space, Heuristic heuristic) {
 
-        if(node.equals(startNode)) {
-            nodePath.addFirst(node);
-            return;
+        if (space instanceof StateGraph) {
+            StateGraph graph = (StateGraph) space;
+            return search(graph, graph.getStartState(), graph.getGoalStates(), heuristic);
         }
 
-        nodePath.addFirst(node);
-        createNodePath(nodePath, node.getParent());
+        SearchStats stats = SearchStats.start("A-STAR");
+        return stats.finish(search(space, heuristic, stats), keepStats);
     }
 
-    public void runAlgorithm(String filePathStateSpace, String filePathHeuristics) throws IOException {
-
-        setHeuristicsMap(filePathHeuristics);
-        argumentsInit(filePathStateSpace);
+    private SearchResult search(StateSpace space, Heuristic heuristic, SearchStats stats) {
 
-        String foundSolution = "no";
         int statesVisited = -1; //on start first node will set it to 0
-        int pathLength = 0;
-        double totalCost = 0;
-        Node finalState = null;
-
-        PriorityQueue<Node> open = new PriorityQueue<>();
-        open.add(startNode);
 
-        HashSet<Node> closed = new HashSet<>();
-
-        while (open.peek() != null) {
-            Node currentNode = open.remove();
-            closed.add(currentNode);
+        StateIndex states = StateIndex.of(space);
+        Successors successors = new Successors();
+        long startState = space.getInitialState();
+        int startSlot = states.add(startState);
+
+        int[] parents = new int[states.capacity()];
+        double[] costs = new double[states.capacity()];
+        boolean[] closed = new boolean[states.capacity()];
+
+        IndexedMinHeap open = new IndexedMinHeap(states.capacity());
+        open.insert(startSlot, heuristic.estimate(startState));
+        stats.opened();
+
+        while (!open.isEmpty()) {
+            int currentSlot = open.poll();
+            long currentState = states.getState(currentSlot);
+            closed[currentSlot] = true;
+            stats.polled();
+            stats.closed++;
             statesVisited++;
 
             //check if currentNode is a goal state
-            if (goalStateNames.contains(currentNode.getName())) {
-                finalState = currentNode;
-                totalCost = currentNode.getCost();
-                foundSolution = "yes";
-                break;
+            if (space.isGoal(currentState)) {
+                return SearchResult.found(statesVisited, costs[currentSlot], parents, startSlot, currentSlot, states);
             }
 
-            TreeSet<Node> currentNodeNeighboursTemplateSet = allStates.get(currentNode);
-
-            if (currentNodeNeighboursTemplateSet == null)
-                continue;
-
-            for (Node neighbourTemplate : currentNodeNeighboursTemplateSet) {
-
-                neighbourTemplate.increaseCost(currentNode.getCost());
-
-                if (closed.contains(neighbourTemplate)) {
-
-                    HashSet<Node> closedCopy = new HashSet<>(closed);
-                    Iterator<Node> iterator = closedCopy.iterator();
-                    while (iterator.hasNext()) {
-                        Node element = iterator.next();
-                        if (element.equals(neighbourTemplate)) {
-
-                            if(element.getCost() < neighbourTemplate.getCost()) {
-                                break;
-                            } else {
-                                closed.remove(element);
-                                Node neighbour = new Node(neighbourTemplate.getName(), neighbourTemplate.getCost(), heuristicsMap.get(neighbourTemplate.getName()));
-                                neighbour.setParent(currentNode);
-                                open.add(neighbour);
-                                break;
-                            }
-                        }
-                    }
-
-                } else if (open.contains(neighbourTemplate)) {
-
-                    PriorityQueue<Node> openCopy = new PriorityQueue<>(open);
-                    Iterator<Node> iterator = openCopy.iterator();
-                    while (iterator.hasNext()) {
-                        Node element = iterator.next();
-                        if (element.equals(neighbourTemplate)) {
-
-                            if(element.getCost() < neighbourTemplate.getCost()) {
-                                break;
-                            } else {
-                                open.remove(element);
-                                Node neighbour = new Node(neighbourTemplate.getName(), neighbourTemplate.getCost(), heuristicsMap.get(neighbourTemplate.getName()));
-                                neighbour.setParent(currentNode);
-                                open.add(neighbour);
-                                break;
-                            }
-                        }
-                    }
+            space.successors(currentState, successors);
+            stats.generated += successors.size();
+            for (int i = 0; i < successors.size(); i++) {
+
+                long neighbourState = successors.getState(i);
+                int neighbour = states.add(neighbourState);
+                double cost = costs[currentSlot] + successors.getCost(i);
+
+                if (neighbour == parents.length) {
+                    int capacity = states.capacity();
+                    parents = Arrays.copyOf(parents, capacity);
+                    costs = Arrays.copyOf(costs, capacity);
+                    closed = Arrays.copyOf(closed, capacity);
+                }
+
+                if (closed[neighbour]) {
+
+                    //an inconsistent heuristic can close a state too early, reopen it
+                    if (cost >= costs[neighbour])
+                        continue;
+                    closed[neighbour] = false;
+                    open.insert(neighbour, cost + heuristic.estimate(neighbourState));
+                    stats.opened();
+                    stats.reopened++;
+                    stats.closed--;
+
+                } else if (open.contains(neighbour)) {
+
+                    if (cost > costs[neighbour])
+                        continue;
+                    open.decreaseKey(neighbour, cost + heuristic.estimate(neighbourState));
 
                 } else {
 
-                    Node neighbour = new Node(neighbourTemplate.getName(), neighbourTemplate.getCost(), heuristicsMap.get(neighbourTemplate.getName()));
-                    neighbour.setParent(currentNode);
-                    open.add(neighbour);
+                    open.insert(neighbour, cost + heuristic.estimate(neighbourState));
+                    stats.opened();
 
                 }
 
+                costs[neighbour] = cost;
+                parents[neighbour] = currentSlot;
             }
         }
 
-        if(foundSolution.equals("no")) {
-            System.out.println("[FOUND_SOLUTION]: " + foundSolution);
-            return;
-        }
-
-        LinkedList<Node> nodePath = new LinkedList<>();
-        createNodePath(nodePath, finalState);
-        pathLength = nodePath.size();
-
-        System.out.println("# A-STAR " + filePathHeuristics);
-        System.out.println("[FOUND_SOLUTION]: " + foundSolution);
-        System.out.println("[STATES_VISITED]: " + statesVisited);
-        System.out.println("[PATH_LENGTH]: " + pathLength);
-        System.out.println("[TOTAL_COST]: " + totalCost);
-        System.out.print("[PATH]: ");
-
-        for(int i = 0; i < nodePath.size(); i++) {
-            if(i == nodePath.size() - 1) {
-                System.out.print(nodePath.get(i).getName());
-            } else {
-                System.out.print(nodePath.get(i).getName() + " => ");
-            }
-        }
-        return;
+        return SearchResult.notFound(statesVisited);
     }
 
 }
@@ -1,218 +1,145 @@
 package ui;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.*;
 
 public class BFS {
 
-    private Node startNode;
-    private HashSet<String> goalStateNames;
-    private HashMap<Node, TreeSet<Node>> allStates;
-
-    private class Node implements Comparable<Node>{
-        private final String name;
-        private double cost;
-        private Node parent;
-        private TreeSet<Node> neighbours;
-
-        public Node(String name, double cost) {
-            this.name = name;
-            this.cost = cost;
-            this.parent = null;
-            this.neighbours = new TreeSet<>();
-        }
-
-        public String getName() {
-            return name;
-        }
-
-        public double getCost() {
-            return cost;
-        }
-
-        public void setCost(double cost) {
-            this.cost = cost;
-        }
+    private final boolean pruneDeadEnds;
+    private final boolean keepStats;
 
-        public void increaseCost(double cost) {
-            this.cost += cost;
-        }
-
-        public Node getParent() {
-            return parent;
-        }
+    public BFS() {
+        this(false);
+    }
 
-        public void setParent(Node parent) {
-            this.parent = parent;
-        }
+    /**
+     * @param pruneDeadEnds skip states that cannot reach a goal, for the goal states of the
+     *                      graph itself
+     */
+    public BFS(boolean pruneDeadEnds) {
+        this(pruneDeadEnds, false);
+    }
 
-        public TreeSet<Node> getNeighbours() {
-            return neighbours;
-        }
+    /**
+     * @param pruneDeadEnds skip states that cannot reach a goal, for the goal states of the
+     *                      graph itself
+     * @param keepStats attach the counters of every search to its result
+     */
+    public BFS(boolean pruneDeadEnds, boolean keepStats) {
+        this.pruneDeadEnds = pruneDeadEnds;
+        this.keepStats = keepStats;
+    }
 
-        public void appendNeighbour(Node neighbour) {
-            this.neighbours.add(neighbour);
-        }
+    public SearchResult runAlgorithm(String filePath) throws IOException {
 
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
-            Node node = (Node) o;
-            return name.equals(node.name);
+        long[] loadNanos = new long[1];
+        StateSpace space = SearchStats.load(filePath, loadNanos);
+        SearchResult result = search(space);
+        if (result.getStats() != null) {
+            result.getStats().setLoadNanos(loadNanos[0]);
         }
+        System.out.println(result.format("# BFS", space));
+        return result;
+    }
 
-        @Override
-        public int hashCode() {
-            return Objects.hash(name);
-        }
+    public SearchResult search(StateGraph graph, int startState, BitSet goalStates) {
+        return search(graph.withEndpoints(startState, goalStates),
+                pruneDeadEnds ? graph.getGoalReachable(goalStates) : null);
+    }
 
-        @Override
-        public int compareTo(Node otherNode) {
-            return this.name.compareTo(otherNode.getName());
+    public SearchResult search(StateSpace space) {
+        BitSet goalReachable = null;
+        if (pruneDeadEnds && space instanceof StateGraph) {
+            StateGraph graph = (StateGraph) space;
+            goalReachable = graph.getGoalReachable(graph.getGoalStates());
         }
-
+        return search(space, goalReachable);
     }
 
-    private void argumentsInit(String filePath) throws IOException {
-
-        BufferedReader reader = new BufferedReader(new FileReader(filePath));
-
-        String line = reader.readLine();
-        while (line.startsWith("#")) {
-                line = reader.readLine();
-        }
+    private SearchResult search(StateSpace space, BitSet goalReachable) {
+        SearchStats stats = SearchStats.start("BFS");
+        return stats.finish(search(space, goalReachable, stats), keepStats);
+    }
 
-        String startNodeName = line;
+    /**
+     * Level-synchronous breadth first search. A state is marked as seen when it is first
+     * generated, which also fixes its parent and cost, so every state enters the frontier
+     * at most once. Only the level being expanded and the next one are kept, in two arrays
+     * that swap roles after every level. States of a graph that are not in goalReachable
+     * are never generated.
+     */
+    private SearchResult search(StateSpace space, BitSet goalReachable, SearchStats stats) {
 
-        line = reader.readLine();
-        while (line.startsWith("#")) {
-            line = reader.readLine();
+        if (goalReachable != null && !goalReachable.get((int) space.getInitialState())) {
+            return SearchResult.notFound(0);
         }
 
-        String[] goalStateNames = line.split(" ");
-        this.goalStateNames = new HashSet<>();
-        this.goalStateNames.addAll(Arrays.asList(goalStateNames));
-
-        allStates = new HashMap<>();
-
-        line = reader.readLine();
-        while (line != null) {
-            if(line.startsWith("#")){
-                line = reader.readLine();
-            }
-            String[] stateAndNeighbours = line.split(": ");
-
-            if(stateAndNeighbours.length == 1) {
-                stateAndNeighbours[0] = stateAndNeighbours[0].substring(0, stateAndNeighbours[0].length() - 1);
-            }
-
-            Node newNode = new Node(stateAndNeighbours[0], 0);
-
-            if(stateAndNeighbours.length > 1) {
-                String neighboursUnsplit = stateAndNeighbours[1];
-                String[] neighbours = neighboursUnsplit.split(" ");
-
-                for (String neighbour : neighbours) {
-                    String[] nameAndCost = neighbour.split(",");
-                    String name = nameAndCost[0];
-                    double cost = Double.parseDouble(nameAndCost[1]);
+        int statesVisited = -1; //on start first node will set it to 0
 
-                    Node neigbourNode = new Node(name, cost);
-                    newNode.appendNeighbour(neigbourNode);
+        StateIndex states = StateIndex.of(space);
+        Successors successors = new Successors();
+        int startSlot = states.add(space.getInitialState());
+
+        int[] parents = new int[states.capacity()];
+        double[] costs = new double[states.capacity()];
+        BitSet seen = new BitSet(states.capacity());
+        seen.set(startSlot);
+        stats.closed++;
+
+        int[] frontier = new int[16];
+        int[] next = new int[16];
+        int frontierSize = 0;
+        frontier[frontierSize++] = startSlot;
+        stats.opened();
+
+        while (frontierSize > 0) {
+
+            int nextSize = 0;
+            for (int f = 0; f < frontierSize; f++) {
+                int currentSlot = frontier[f];
+                long currentState = states.getState(currentSlot);
+                stats.polled();
+                statesVisited++;
+
+                //check if currentNode is a goal state
+                if (space.isGoal(currentState)) {
+                    return SearchResult.found(statesVisited, costs[currentSlot], parents, startSlot, currentSlot, states);
                 }
-            }
 
-            allStates.put(newNode, newNode.getNeighbours());
-            if(newNode.getName().equals(startNodeName)) {
-                startNode = new Node(newNode.getName(), newNode.getCost());
-                for(Node neighbour : newNode.getNeighbours()) {
-                    startNode.appendNeighbour(neighbour);
+                space.successors(currentState, successors);
+                stats.generated += successors.size();
+                for (int i = 0; i < successors.size(); i++) {
+
+                    long neighbourState = successors.getState(i);
+                    if (goalReachable != null && !goalReachable.get((int) neighbourState))
+                        continue;
+                    int neighbour = states.add(neighbourState);
+                    if (seen.get(neighbour))
+                        continue;
+                    seen.set(neighbour);
+                    stats.closed++;
+
+                    if (neighbour == parents.length) {
+                        parents = Arrays.copyOf(parents, states.capacity());
+                        costs = Arrays.copyOf(costs, states.capacity());
+                    }
+                    parents[neighbour] = currentSlot;
+                    costs[neighbour] = costs[currentSlot] + successors.getCost(i);
+
+                    if (nextSize == next.length) {
+                        next = Arrays.copyOf(next, nextSize * 2);
+                    }
+                    next[nextSize++] = neighbour;
+                    stats.opened();
                 }
             }
-            line = reader.readLine();
-        }
 
-        reader.close();
-    }
-
-    public void createNodePath(LinkedList<Node> nodePath, Node node) {
-
-
-        if(node.equals(startNode)) {
-            nodePath.addFirst(node);
-            return;
+            int[] expanded = frontier;
+            frontier = next;
+            next = expanded;
+            frontierSize = nextSize;
         }
 
-        nodePath.addFirst(node);
-        createNodePath(nodePath, node.getParent());
-    }
-
-    public void runAlgorithm(String filePath) throws IOException {
-
-        argumentsInit(filePath);
-
-        String foundSolution = "no";
-        int statesVisited = -1; //on start first node will set it to 0
-        int pathLength = 0;
-        double totalCost = 0;
-        Node finalState = null;
-
-        ArrayDeque<Node> open = new ArrayDeque<>();
-        open.addLast(startNode);
-
-        HashSet<String> closedNodeNames = new HashSet<>();
-
-        while (open.peek() != null) {
-            Node currentNode = open.removeFirst();
-            closedNodeNames.add(currentNode.getName());
-            statesVisited++;
-
-            //check if currentNode is a goal state
-            if (goalStateNames.contains(currentNode.getName())) {
-                finalState = currentNode;
-                totalCost = currentNode.getCost();
-                foundSolution = "yes";
-                break;
-            }
-
-            TreeSet<Node> currentNodeNeighboursTemplateSet = allStates.get(currentNode);
-
-            if(currentNodeNeighboursTemplateSet == null)
-                continue;
-
-            for (Node neighbourTemplate : currentNodeNeighboursTemplateSet) {
-
-                if(closedNodeNames.contains(neighbourTemplate.getName()))
-                    continue;
-
-                Node neighbour = new Node(neighbourTemplate.getName(), neighbourTemplate.getCost());
-                neighbour.increaseCost(currentNode.getCost());
-                neighbour.setParent(currentNode);
-                open.addLast(neighbour);
-            }
-        }
-
-        LinkedList<Node> nodePath = new LinkedList<>();
-        createNodePath(nodePath, finalState);
-        pathLength = nodePath.size();
-
-        System.out.println("# BFS");
-        System.out.println("[FOUND_SOLUTION]: " + foundSolution);
-        System.out.println("[STATES_VISITED]: " + statesVisited);
-        System.out.println("[PATH_LENGTH]: " + pathLength);
-        System.out.println("[TOTAL_COST]: " + totalCost);
-        System.out.print("[PATH]: ");
-
-        for(int i = 0; i < nodePath.size(); i++) {
-            if(i == nodePath.size() - 1) {
-                System.out.print(nodePath.get(i).getName());
-            } else {
-                System.out.print(nodePath.get(i).getName() + " => ");
-            }
-        }
-        return;
+        return SearchResult.notFound(statesVisited);
     }
 }
@@ -0,0 +1,127 @@
+package ui;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Bidirectional Dijkstra. One search runs forward from the start state, the other runs
+ * over the reversed edges from all goal states at once. The search stops as soon as the
+ * two smallest open keys add up to at least the best path found through a state reached
+ * from both sides.
+ */
+public class BidirectionalUCS {
+
+    public void runAlgorithm(String filePath) throws IOException {
+
+        StateGraph graph = StateGraph.load(filePath);
+        SearchResult result = search(graph, graph.getStartState(), graph.getGoalStates());
+        System.out.println(result.format("# BUCS", graph));
+    }
+
+    public SearchResult search(StateGraph graph, int startState, BitSet goalStates) {
+
+        StateGraph reversed = graph.reversed();
+        int statesVisited = 0;
+
+        int[] forwardParents = new int[graph.getStateCount()];
+        int[] backwardParents = new int[graph.getStateCount()];
+        double[] forwardCosts = new double[graph.getStateCount()];
+        double[] backwardCosts = new double[graph.getStateCount()];
+        Arrays.fill(forwardCosts, Double.POSITIVE_INFINITY);
+        Arrays.fill(backwardCosts, Double.POSITIVE_INFINITY);
+
+        IndexedMinHeap forwardOpen = new IndexedMinHeap(graph.getStateCount());
+        IndexedMinHeap backwardOpen = new IndexedMinHeap(graph.getStateCount());
+        boolean[] forwardClosed = new boolean[graph.getStateCount()];
+        boolean[] backwardClosed = new boolean[graph.getStateCount()];
+
+        forwardCosts[startState] = 0;
+        forwardOpen.insert(startState, 0);
+        for (int goal = goalStates.nextSetBit(0); goal >= 0; goal = goalStates.nextSetBit(goal + 1)) {
+            backwardCosts[goal] = 0;
+            backwardOpen.insert(goal, 0);
+        }
+
+        double bestCost = goalStates.get(startState) ? 0 : Double.POSITIVE_INFINITY;
+        int meetingState = goalStates.get(startState) ? startState : -1;
+
+        while (!forwardOpen.isEmpty() && !backwardOpen.isEmpty()) {
+
+            double forwardKey = forwardOpen.getKey(forwardOpen.peek());
+            double backwardKey = backwardOpen.getKey(backwardOpen.peek());
+            if (forwardKey + backwardKey >= bestCost)
+                break;
+
+            statesVisited++;
+            boolean forward = forwardKey <= backwardKey;
+            StateGraph direction = forward ? graph : reversed;
+            IndexedMinHeap open = forward ? forwardOpen : backwardOpen;
+            double[] costs = forward ? forwardCosts : backwardCosts;
+            double[] otherCosts = forward ? backwardCosts : forwardCosts;
+            int[] parents = forward ? forwardParents : backwardParents;
+            boolean[] closed = forward ? forwardClosed : backwardClosed;
+
+            int currentState = open.poll();
+            closed[currentState] = true;
+
+            for (int edge = direction.getEdgesBegin(currentState); edge < direction.getEdgesEnd(currentState); edge++) {
+
+                int neighbour = direction.getEdgeTarget(edge);
+                if (closed[neighbour])
+                    continue;
+
+                double cost = costs[currentState] + direction.getEdgeCost(edge);
+                if (cost < costs[neighbour]) {
+                    if (open.contains(neighbour)) {
+                        open.decreaseKey(neighbour, cost);
+                    } else {
+                        open.insert(neighbour, cost);
+                    }
+                    costs[neighbour] = cost;
+                    parents[neighbour] = currentState;
+                }
+
+                if (costs[neighbour] + otherCosts[neighbour] < bestCost) {
+                    bestCost = costs[neighbour] + otherCosts[neighbour];
+                    meetingState = neighbour;
+                }
+            }
+        }
+
+        if (meetingState < 0) {
+            return SearchResult.notFound(statesVisited);
+        }
+
+        return joinPaths(graph, statesVisited, startState, meetingState, forwardParents, backwardParents,
+                goalStates);
+    }
+
+    private SearchResult joinPaths(StateGraph graph, int statesVisited, int startState, int meetingState,
+                                   int[] forwardParents, int[] backwardParents, BitSet goalStates) {
+
+        int forwardLength = 1;
+        for (int state = meetingState; state != startState; state = forwardParents[state]) {
+            forwardLength++;
+        }
+        int backwardLength = 0;
+        for (int state = meetingState; !goalStates.get(state); state = backwardParents[state]) {
+            backwardLength++;
+        }
+
+        int[] path = new int[forwardLength + backwardLength];
+        int state = meetingState;
+        for (int i = forwardLength - 1; i > 0; i--) {
+            path[i] = state;
+            state = forwardParents[state];
+        }
+        path[0] = startState;
+        state = meetingState;
+        for (int i = forwardLength; i < path.length; i++) {
+            state = backwardParents[state];
+            path[i] = state;
+        }
+
+        return SearchResult.ofPath(statesVisited, graph, path);
+    }
+
+}
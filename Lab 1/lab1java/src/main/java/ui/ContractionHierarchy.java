@@ -0,0 +1,735 @@
+package ui;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Contraction hierarchy for repeated shortest path queries on a static graph.
+ * <p>
+ * States are contracted one at a time, least important first. Contracting a state removes
+ * it from the graph and adds a shortcut u -> w for every path u -> v -> w through it that
+ * no other path of at most the same cost replaces (the witness). A query is then a
+ * bidirectional Dijkstra that only follows edges towards states contracted later, which
+ * settles a few hundred states instead of the whole graph. Shortcuts remember the state
+ * they skip and the two edges they replace, so the path can be unpacked into original
+ * edges.
+ * <p>
+ * File layout, little-endian: the magic bytes, a header of version, state count, edge
+ * count of the original graph and the edge counts of both upward graphs, then for the
+ * forward and the backward graph the row offsets, the edges as (target, skipped state,
+ * first edge, second edge) and the edge costs. Sections start on an 8 byte boundary and
+ * are memory-mapped on their own.
+ */
+public class ContractionHierarchy {
+
+    public static final byte[] MAGIC = {'U', 'I', 'C', 'H'};
+    public static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 32;
+    private static final int EDGE_INTS = 4;
+
+    //settled states after which a witness search gives up and a shortcut is added, estimating
+    //the priority of a state gives up earlier since it runs many more times
+    private static final int WITNESS_LIMIT = 100;
+    private static final int ESTIMATE_WITNESS_LIMIT = 50;
+
+    /**
+     * Upward graph in compressed sparse rows. A forward edge leads from a state to one
+     * contracted later, a backward edge is stored at its target and leads back to a source
+     * contracted later. The first edge of a shortcut is a backward edge and the second one
+     * a forward edge, both in the row of the skipped state. Original edges skip -1.
+     */
+    private static class UpwardGraph {
+        private final IntBuffer offsets;
+        private final IntBuffer edges;
+        private final DoubleBuffer costs;
+
+        public UpwardGraph(IntBuffer offsets, IntBuffer edges, DoubleBuffer costs) {
+            this.offsets = offsets;
+            this.edges = edges;
+            this.costs = costs;
+        }
+
+        public int getEdgeCount() {
+            return costs.limit();
+        }
+
+        public int getEdgesBegin(int state) {
+            return offsets.get(state);
+        }
+
+        public int getEdgesEnd(int state) {
+            return offsets.get(state + 1);
+        }
+
+        public int getEdgeTarget(int edge) {
+            return edges.get(EDGE_INTS * edge);
+        }
+
+        public int getSkippedState(int edge) {
+            return edges.get(EDGE_INTS * edge + 1);
+        }
+
+        public int getFirstEdge(int edge) {
+            return edges.get(EDGE_INTS * edge + 2);
+        }
+
+        public int getSecondEdge(int edge) {
+            return edges.get(EDGE_INTS * edge + 3);
+        }
+
+        public double getEdgeCost(int edge) {
+            return costs.get(edge);
+        }
+    }
+
+    private final StateGraph graph;
+    private final UpwardGraph forward;
+    private final UpwardGraph backward;
+
+    //query workspace, reset through the lists of touched states after every query
+    private final double[] forwardCosts;
+    private final double[] backwardCosts;
+    private final int[] forwardParents;
+    private final int[] backwardParents;
+    private final IndexedMinHeap forwardOpen;
+    private final IndexedMinHeap backwardOpen;
+    private final IntList forwardTouched;
+    private final IntList backwardTouched;
+
+    private ContractionHierarchy(StateGraph graph, UpwardGraph forward, UpwardGraph backward) {
+        this.graph = graph;
+        this.forward = forward;
+        this.backward = backward;
+
+        int stateCount = graph.getStateCount();
+        this.forwardCosts = new double[stateCount];
+        this.backwardCosts = new double[stateCount];
+        Arrays.fill(forwardCosts, Double.POSITIVE_INFINITY);
+        Arrays.fill(backwardCosts, Double.POSITIVE_INFINITY);
+        this.forwardParents = new int[stateCount];
+        this.backwardParents = new int[stateCount];
+        this.forwardOpen = new IndexedMinHeap(stateCount);
+        this.backwardOpen = new IndexedMinHeap(stateCount);
+        this.forwardTouched = new IntList();
+        this.backwardTouched = new IntList();
+    }
+
+    public static void runAlgorithm(String filePathStateSpace, String filePathHierarchy) throws IOException {
+
+        StateGraph graph = StateGraph.load(filePathStateSpace);
+
+        //without a hierarchy file, contract the graph for this one query
+        ContractionHierarchy hierarchy = filePathHierarchy != null ? map(filePathHierarchy, graph) : contract(graph);
+        SearchResult result = hierarchy.search(graph.getStartState(), graph.getGoalStates());
+        System.out.println(result.format("# CH", graph));
+    }
+
+    /**
+     * Contracts the graph and writes the hierarchy.
+     *
+     * @param graph state space
+     * @param filePath path of the hierarchy file
+     * @throws IOException if writing the file fails
+     */
+    public static void build(StateGraph graph, String filePath) throws IOException {
+        contract(graph).write(filePath);
+    }
+
+    /**
+     * Contracts the graph in memory. Parallel edges are merged into the cheapest one and
+     * self loops are dropped, neither is ever part of a shortest path.
+     *
+     * @param graph state space
+     * @return contraction hierarchy of the graph
+     */
+    public static ContractionHierarchy contract(StateGraph graph) {
+        return new Contractor(graph).run();
+    }
+
+    /**
+     * Memory-maps a hierarchy file written by {@link #build}.
+     *
+     * @param filePath path of the hierarchy file
+     * @param graph state space the hierarchy was built for
+     * @return mapped hierarchy
+     * @throws IOException if the file is not a hierarchy file for this state space
+     */
+    public static ContractionHierarchy map(String filePath, StateGraph graph) throws IOException {
+
+        FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ);
+
+        ByteBuffer header = StateSnapshot.map(channel, 0, HEADER_SIZE);
+        for (byte expected : MAGIC) {
+            if (header.get() != expected) {
+                channel.close();
+                throw new IOException(filePath + " is not a contraction hierarchy file");
+            }
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            channel.close();
+            throw new IOException(filePath + " has contraction hierarchy version " + version + ", expected " + VERSION);
+        }
+        int stateCount = header.getInt();
+        int edgeCount = header.getInt();
+        if (stateCount != graph.getStateCount() || edgeCount != graph.getEdgeCount()) {
+            channel.close();
+            throw new IOException(filePath + " was built for " + stateCount + " states and " + edgeCount
+                    + " edges, the state space has " + graph.getStateCount() + " and " + graph.getEdgeCount());
+        }
+        int forwardEdgeCount = header.getInt();
+        int backwardEdgeCount = header.getInt();
+
+        long[] position = {HEADER_SIZE};
+        UpwardGraph forward = mapUpward(channel, position, stateCount, forwardEdgeCount);
+        UpwardGraph backward = mapUpward(channel, position, stateCount, backwardEdgeCount);
+        channel.close();
+
+        return new ContractionHierarchy(graph, forward, backward);
+    }
+
+    private static UpwardGraph mapUpward(FileChannel channel, long[] position, int stateCount, int edgeCount)
+            throws IOException {
+
+        IntBuffer offsets = StateSnapshot.map(channel, position[0], 4L * (stateCount + 1)).asIntBuffer();
+        position[0] = StateSnapshot.align(position[0] + 4L * (stateCount + 1));
+        IntBuffer edges = StateSnapshot.map(channel, position[0], 4L * EDGE_INTS * edgeCount).asIntBuffer();
+        position[0] = StateSnapshot.align(position[0] + 4L * EDGE_INTS * edgeCount);
+        DoubleBuffer costs = StateSnapshot.map(channel, position[0], 8L * edgeCount).asDoubleBuffer();
+        position[0] += 8L * edgeCount;
+        return new UpwardGraph(offsets, edges, costs);
+    }
+
+    /**
+     * Writes the hierarchy, see the class comment for the layout.
+     *
+     * @param filePath path of the hierarchy file
+     * @throws IOException if writing the file fails
+     */
+    public void write(String filePath) throws IOException {
+
+        FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        StateSnapshot.SectionWriter writer = new StateSnapshot.SectionWriter(channel);
+
+        writer.putBytes(MAGIC);
+        writer.putInt(VERSION);
+        writer.putInt(graph.getStateCount());
+        writer.putInt(graph.getEdgeCount());
+        writer.putInt(forward.getEdgeCount());
+        writer.putInt(backward.getEdgeCount());
+        writer.putLong(0);
+
+        writeUpward(writer, forward);
+        writer.align();
+        writeUpward(writer, backward);
+
+        writer.flush();
+        channel.close();
+    }
+
+    private void writeUpward(StateSnapshot.SectionWriter writer, UpwardGraph upward) throws IOException {
+
+        for (int state = 0; state <= graph.getStateCount(); state++) {
+            writer.putInt(upward.offsets.get(state));
+        }
+        writer.align();
+        for (int i = 0; i < EDGE_INTS * upward.getEdgeCount(); i++) {
+            writer.putInt(upward.edges.get(i));
+        }
+        writer.align();
+        for (int edge = 0; edge < upward.getEdgeCount(); edge++) {
+            writer.putDouble(upward.getEdgeCost(edge));
+        }
+    }
+
+    /**
+     * Finds a shortest path from the start state to the nearest goal state. The forward
+     * search starts at the start state, the backward search at all goal states, and each
+     * stops once its smallest open cost reaches the best path through a state settled by
+     * both. The hierarchy keeps one workspace, so queries must not run concurrently.
+     *
+     * @param startState start state
+     * @param goalStates goal states
+     * @return path in original edges, with the number of settled states as visited count
+     */
+    public synchronized SearchResult search(int startState, BitSet goalStates) {
+
+        int statesVisited = 0;
+        double bestCost = Double.POSITIVE_INFINITY;
+        int meetingState = -1;
+
+        reach(forwardOpen, forwardCosts, forwardParents, forwardTouched, startState, 0, -1);
+        for (int goal = goalStates.nextSetBit(0); goal >= 0; goal = goalStates.nextSetBit(goal + 1)) {
+            reach(backwardOpen, backwardCosts, backwardParents, backwardTouched, goal, 0, -1);
+        }
+
+        while (true) {
+
+            double forwardKey = forwardOpen.isEmpty() ? Double.POSITIVE_INFINITY
+                    : forwardOpen.getKey(forwardOpen.peek());
+            double backwardKey = backwardOpen.isEmpty() ? Double.POSITIVE_INFINITY
+                    : backwardOpen.getKey(backwardOpen.peek());
+            if (Math.min(forwardKey, backwardKey) >= bestCost)
+                break;
+
+            boolean isForward = forwardKey <= backwardKey;
+            UpwardGraph upward = isForward ? forward : backward;
+            IndexedMinHeap open = isForward ? forwardOpen : backwardOpen;
+            double[] costs = isForward ? forwardCosts : backwardCosts;
+            double[] otherCosts = isForward ? backwardCosts : forwardCosts;
+            int[] parents = isForward ? forwardParents : backwardParents;
+            IntList touched = isForward ? forwardTouched : backwardTouched;
+
+            int currentState = open.poll();
+            statesVisited++;
+
+            //the highest state of a shortest path is settled by both searches
+            if (costs[currentState] + otherCosts[currentState] < bestCost) {
+                bestCost = costs[currentState] + otherCosts[currentState];
+                meetingState = currentState;
+            }
+
+            for (int edge = upward.getEdgesBegin(currentState); edge < upward.getEdgesEnd(currentState); edge++) {
+                double cost = costs[currentState] + upward.getEdgeCost(edge);
+                int neighbour = upward.getEdgeTarget(edge);
+                if (cost < costs[neighbour]) {
+                    reach(open, costs, parents, touched, neighbour, cost, edge);
+                }
+            }
+        }
+
+        SearchResult result = meetingState < 0 ? SearchResult.notFound(statesVisited)
+                : SearchResult.ofPath(statesVisited, graph, unpackPath(meetingState));
+
+        forwardOpen.clear();
+        backwardOpen.clear();
+        reset(forwardCosts, forwardTouched);
+        reset(backwardCosts, backwardTouched);
+        return result;
+    }
+
+    private static void reach(IndexedMinHeap open, double[] costs, int[] parents, IntList touched, int state,
+                              double cost, int parentEdge) {
+        if (costs[state] == Double.POSITIVE_INFINITY) {
+            touched.add(state);
+        }
+        if (open.contains(state)) {
+            open.decreaseKey(state, cost);
+        } else {
+            open.insert(state, cost);
+        }
+        costs[state] = cost;
+        parents[state] = parentEdge;
+    }
+
+    private static void reset(double[] costs, IntList touched) {
+        for (int i = 0; i < touched.size(); i++) {
+            costs[touched.get(i)] = Double.POSITIVE_INFINITY;
+        }
+        touched.clear();
+    }
+
+    /**
+     * Joins both search trees at the meeting state and replaces every shortcut by the
+     * original edges it stands for.
+     */
+    private int[] unpackPath(int meetingState) {
+
+        //forward tree edges are found walking back from the meeting state, so collect them first
+        IntList forwardEdges = new IntList();
+        IntList forwardHeads = new IntList();
+        int state = meetingState;
+        while (forwardParents[state] >= 0) {
+            int edge = forwardParents[state];
+            forwardEdges.add(edge);
+            forwardHeads.add(state);
+            state = rowOf(forward, edge);
+        }
+
+        IntList path = new IntList();
+        path.add(state);
+        for (int i = forwardEdges.size() - 1; i >= 0; i--) {
+            unpack(forward, forwardEdges.get(i), forwardHeads.get(i), path);
+        }
+
+        //a backward tree edge leads from the state towards the goal, stored at its target
+        state = meetingState;
+        while (backwardParents[state] >= 0) {
+            int edge = backwardParents[state];
+            int next = rowOf(backward, edge);
+            unpack(backward, edge, next, path);
+            state = next;
+        }
+
+        return path.toArray();
+    }
+
+    //the search trees only store edge indices, the state an edge belongs to is found by its row
+    private int rowOf(UpwardGraph upward, int edge) {
+        int low = 0;
+        int high = graph.getStateCount() - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (upward.getEdgesBegin(middle) <= edge) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Appends the states an edge passes through after its source, ending with its head.
+     * Shortcuts are expanded with an explicit stack, since they can nest as deep as the
+     * path is long.
+     */
+    private void unpack(UpwardGraph upward, int edge, int head, IntList path) {
+
+        IntList stack = new IntList();
+        push(stack, upward == forward, edge, head);
+
+        while (stack.size() > 0) {
+            int currentHead = stack.pop();
+            int currentEdge = stack.pop();
+            UpwardGraph current = stack.pop() == 1 ? forward : backward;
+
+            int skipped = current.getSkippedState(currentEdge);
+            if (skipped < 0) {
+                path.add(currentHead);
+            } else {
+                //the second half is pushed first, so the first half is expanded first
+                push(stack, true, current.getSecondEdge(currentEdge), currentHead);
+                push(stack, false, current.getFirstEdge(currentEdge), skipped);
+            }
+        }
+    }
+
+    private static void push(IntList stack, boolean isForward, int edge, int head) {
+        stack.add(isForward ? 1 : 0);
+        stack.add(edge);
+        stack.add(head);
+    }
+
+    /**
+     * Builds the hierarchy on a mutable copy of the graph. Every edge ever created is kept
+     * in growable arrays, the rows of the remaining graph hold edge indices.
+     */
+    private static class Contractor {
+
+        private final StateGraph graph;
+        private final int stateCount;
+
+        private int edgeCount;
+        private int[] sources = new int[16];
+        private int[] targets = new int[16];
+        private int[] skipped = new int[16];
+        private int[] firstEdges = new int[16];
+        private int[] secondEdges = new int[16];
+        private double[] costs = new double[16];
+
+        private final IntList[] outEdges;
+        private final IntList[] inEdges;
+        //level in the hierarchy, one more than the highest level of a contracted neighbour
+        private final int[] levels;
+
+        //edges of a state at the moment it is contracted, all lead to states contracted later
+        private final int[][] upwardOut;
+        private final int[][] upwardIn;
+
+        private final double[] witnessCosts;
+        private final IntList witnessTouched;
+        private final IndexedMinHeap witnessOpen;
+
+        public Contractor(StateGraph graph) {
+            this.graph = graph;
+            this.stateCount = graph.getStateCount();
+            this.outEdges = new IntList[stateCount];
+            this.inEdges = new IntList[stateCount];
+            this.levels = new int[stateCount];
+            this.upwardOut = new int[stateCount][];
+            this.upwardIn = new int[stateCount][];
+            this.witnessCosts = new double[stateCount];
+            Arrays.fill(witnessCosts, Double.POSITIVE_INFINITY);
+            this.witnessTouched = new IntList();
+            this.witnessOpen = new IndexedMinHeap(stateCount);
+
+            for (int state = 0; state < stateCount; state++) {
+                outEdges[state] = new IntList();
+                inEdges[state] = new IntList();
+            }
+            for (int state = 0; state < stateCount; state++) {
+                int last = -1;
+                for (int edge = graph.getEdgesBegin(state); edge < graph.getEdgesEnd(state); edge++) {
+                    int target = graph.getEdgeTarget(edge);
+                    if (target == state)
+                        continue;
+                    //rows are sorted by target, so parallel edges are next to each other
+                    if (last >= 0 && targets[last] == target) {
+                        costs[last] = Math.min(costs[last], graph.getEdgeCost(edge));
+                        continue;
+                    }
+                    last = addEdge(state, target, graph.getEdgeCost(edge), -1, -1, -1);
+                }
+            }
+        }
+
+        public ContractionHierarchy run() {
+
+            IndexedMinHeap queue = new IndexedMinHeap(stateCount);
+            for (int state = 0; state < stateCount; state++) {
+                queue.insert(state, priority(state));
+            }
+
+            while (!queue.isEmpty()) {
+
+                //priorities change as neighbours are contracted, so they are rechecked when a state comes up
+                int state = queue.poll();
+                double priority = priority(state);
+                if (!queue.isEmpty() && priority > queue.getKey(queue.peek())) {
+                    queue.insert(state, priority);
+                    continue;
+                }
+
+                contract(state, false);
+                upwardOut[state] = outEdges[state].toArray();
+                upwardIn[state] = inEdges[state].toArray();
+
+                for (int edge : upwardOut[state]) {
+                    inEdges[targets[edge]].remove(edge);
+                    levels[targets[edge]] = Math.max(levels[targets[edge]], levels[state] + 1);
+                }
+                for (int edge : upwardIn[state]) {
+                    outEdges[sources[edge]].remove(edge);
+                    levels[sources[edge]] = Math.max(levels[sources[edge]], levels[state] + 1);
+                }
+                outEdges[state] = null;
+                inEdges[state] = null;
+            }
+
+            return new ContractionHierarchy(graph, upwardGraph(true), upwardGraph(false));
+        }
+
+        //edge difference, plus the level in the hierarchy so that contraction spreads over the graph
+        private double priority(int state) {
+            return contract(state, true) - outEdges[state].size() - inEdges[state].size() + levels[state];
+        }
+
+        /**
+         * Adds the shortcuts needed to remove a state, or only counts them.
+         *
+         * @return number of shortcuts
+         */
+        private int contract(int state, boolean simulate) {
+
+            int shortcuts = 0;
+            IntList in = inEdges[state];
+            IntList out = outEdges[state];
+
+            for (int i = 0; i < in.size(); i++) {
+                int inEdge = in.get(i);
+                int source = sources[inEdge];
+
+                double maxCost = Double.NEGATIVE_INFINITY;
+                for (int j = 0; j < out.size(); j++) {
+                    if (targets[out.get(j)] != source) {
+                        maxCost = Math.max(maxCost, costs[inEdge] + costs[out.get(j)]);
+                    }
+                }
+                if (maxCost == Double.NEGATIVE_INFINITY)
+                    continue;
+
+                searchWitnesses(source, state, maxCost, simulate ? ESTIMATE_WITNESS_LIMIT : WITNESS_LIMIT);
+                for (int j = 0; j < out.size(); j++) {
+                    int outEdge = out.get(j);
+                    int target = targets[outEdge];
+                    double cost = costs[inEdge] + costs[outEdge];
+                    if (target == source || witnessCosts[target] <= cost)
+                        continue;
+
+                    shortcuts++;
+                    if (!simulate) {
+                        addShortcut(source, target, cost, state, inEdge, outEdge);
+                    }
+                }
+                for (int j = 0; j < witnessTouched.size(); j++) {
+                    witnessCosts[witnessTouched.get(j)] = Double.POSITIVE_INFINITY;
+                }
+                witnessTouched.clear();
+                witnessOpen.clear();
+            }
+
+            return shortcuts;
+        }
+
+        //Dijkstra from the source that avoids the state being contracted
+        private void searchWitnesses(int source, int avoided, double maxCost, int limit) {
+
+            witnessCosts[source] = 0;
+            witnessTouched.add(source);
+            witnessOpen.insert(source, 0);
+
+            int settled = 0;
+            while (!witnessOpen.isEmpty() && settled < limit) {
+                int currentState = witnessOpen.poll();
+                if (witnessCosts[currentState] > maxCost)
+                    break;
+                settled++;
+
+                IntList out = outEdges[currentState];
+                for (int i = 0; i < out.size(); i++) {
+                    int edge = out.get(i);
+                    int neighbour = targets[edge];
+                    double cost = witnessCosts[currentState] + costs[edge];
+                    if (neighbour == avoided || cost >= witnessCosts[neighbour])
+                        continue;
+
+                    if (witnessCosts[neighbour] == Double.POSITIVE_INFINITY) {
+                        witnessTouched.add(neighbour);
+                    }
+                    if (witnessOpen.contains(neighbour)) {
+                        witnessOpen.decreaseKey(neighbour, cost);
+                    } else {
+                        witnessOpen.insert(neighbour, cost);
+                    }
+                    witnessCosts[neighbour] = cost;
+                }
+            }
+        }
+
+        //a shortcut replaces a more expensive edge between the same states
+        private void addShortcut(int source, int target, double cost, int skippedState, int firstEdge,
+                                 int secondEdge) {
+
+            IntList out = outEdges[source];
+            for (int i = 0; i < out.size(); i++) {
+                int edge = out.get(i);
+                if (targets[edge] == target) {
+                    if (costs[edge] <= cost)
+                        return;
+                    out.remove(edge);
+                    inEdges[target].remove(edge);
+                    break;
+                }
+            }
+            addEdge(source, target, cost, skippedState, firstEdge, secondEdge);
+        }
+
+        private int addEdge(int source, int target, double cost, int skippedState, int firstEdge, int secondEdge) {
+
+            if (edgeCount == sources.length) {
+                sources = Arrays.copyOf(sources, edgeCount * 2);
+                targets = Arrays.copyOf(targets, edgeCount * 2);
+                skipped = Arrays.copyOf(skipped, edgeCount * 2);
+                firstEdges = Arrays.copyOf(firstEdges, edgeCount * 2);
+                secondEdges = Arrays.copyOf(secondEdges, edgeCount * 2);
+                costs = Arrays.copyOf(costs, edgeCount * 2);
+            }
+            sources[edgeCount] = source;
+            targets[edgeCount] = target;
+            skipped[edgeCount] = skippedState;
+            firstEdges[edgeCount] = firstEdge;
+            secondEdges[edgeCount] = secondEdge;
+            costs[edgeCount] = cost;
+
+            outEdges[source].add(edgeCount);
+            inEdges[target].add(edgeCount);
+            return edgeCount++;
+        }
+
+        /**
+         * Lays out the recorded edges in rows by state id. The first edge of a shortcut is
+         * always an incoming edge of the skipped state and the second one an outgoing edge,
+         * so their indices refer to the backward and the forward graph.
+         */
+        private UpwardGraph upwardGraph(boolean isForward) {
+
+            int[][] rows = isForward ? upwardOut : upwardIn;
+            int[] offsets = new int[stateCount + 1];
+            for (int state = 0; state < stateCount; state++) {
+                offsets[state + 1] = offsets[state] + rows[state].length;
+            }
+
+            int[] forwardIndex = rowIndex(upwardOut);
+            int[] backwardIndex = rowIndex(upwardIn);
+
+            int[] edges = new int[EDGE_INTS * offsets[stateCount]];
+            double[] upwardCosts = new double[offsets[stateCount]];
+            for (int state = 0; state < stateCount; state++) {
+                for (int i = 0; i < rows[state].length; i++) {
+                    int edge = rows[state][i];
+                    int index = offsets[state] + i;
+                    edges[EDGE_INTS * index] = isForward ? targets[edge] : sources[edge];
+                    edges[EDGE_INTS * index + 1] = skipped[edge];
+                    edges[EDGE_INTS * index + 2] = skipped[edge] < 0 ? -1 : backwardIndex[firstEdges[edge]];
+                    edges[EDGE_INTS * index + 3] = skipped[edge] < 0 ? -1 : forwardIndex[secondEdges[edge]];
+                    upwardCosts[index] = costs[edge];
+                }
+            }
+
+            return new UpwardGraph(IntBuffer.wrap(offsets), IntBuffer.wrap(edges), DoubleBuffer.wrap(upwardCosts));
+        }
+
+        private int[] rowIndex(int[][] rows) {
+            int[] index = new int[edgeCount];
+            int position = 0;
+            for (int state = 0; state < stateCount; state++) {
+                for (int edge : rows[state]) {
+                    index[edge] = position++;
+                }
+            }
+            return index;
+        }
+    }
+
+    private static class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        public int size() {
+            return size;
+        }
+
+        public int get(int index) {
+            return values[index];
+        }
+
+        public void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        public int pop() {
+            return values[--size];
+        }
+
+        //order does not matter for rows of the remaining graph
+        public void remove(int value) {
+            for (int i = 0; i < size; i++) {
+                if (values[i] == value) {
+                    values[i] = values[--size];
+                    return;
+                }
+            }
+        }
+
+        public void clear() {
+            size = 0;
+        }
+
+        public int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+}
@@ -0,0 +1,44 @@
+package ui;
+
+import java.nio.DoubleBuffer;
+
+/**
+ * Double values indexed from 0, held in one buffer or split across several buffers of the
+ * same power of two length, like {@link IntColumn}.
+ */
+public class DoubleColumn {
+
+    private final DoubleBuffer[] chunks;
+    private final int shift;
+    private final int mask;
+    private final int size;
+
+    /**
+     * @param chunks buffers of 2^shift values each, the last one possibly shorter
+     * @param shift binary logarithm of the chunk length, 31 for a single buffer
+     * @param size number of values in all chunks
+     */
+    public DoubleColumn(DoubleBuffer[] chunks, int shift, int size) {
+        this.chunks = chunks;
+        this.shift = shift;
+        this.mask = (int) ((1L << shift) - 1);
+        this.size = size;
+    }
+
+    public static DoubleColumn of(DoubleBuffer values) {
+        return new DoubleColumn(new DoubleBuffer[]{values}, 31, values.limit());
+    }
+
+    public static DoubleColumn wrap(double[] values) {
+        return of(DoubleBuffer.wrap(values));
+    }
+
+    public double get(int index) {
+        return chunks[index >>> shift].get(index & mask);
+    }
+
+    public int size() {
+        return size;
+    }
+
+}
@@ -0,0 +1,512 @@
+package ui;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Breadth first search that keeps its layers on disk, for state spaces with more states
+ * than fit into memory. Every layer is a file of sorted, distinct states.
+ * <p>
+ * The successors of a layer are collected in a buffer of half the memory cap, which is
+ * sorted and written as a run file whenever it fills up. The runs are then merged into the
+ * next layer, dropping duplicates and every state already seen. In a reversible state space
+ * a state seen before can only be in the current or the previous layer, so those two are
+ * merged against. Otherwise the merge goes against the union of all layers so far, which
+ * is rewritten in the same pass. Files are read and written sequentially through direct
+ * buffers.
+ * <p>
+ * A layer is expanded in sorted order, so the goal reported is the smallest goal state of
+ * the first layer that has one. Its path is found by scanning the earlier layers backwards
+ * for the first state that leads to the next state of the path.
+ */
+public class ExternalBFS {
+
+    private static final int BLOCK_BYTES = 1 << 18;
+    //readers kept free for the layers merged against besides the runs
+    private static final int RESERVED_READERS = 3;
+
+    private final long memoryBytes;
+    private final Path tempDirectory;
+    private final boolean exhaustive;
+
+    private Path workDirectory;
+    private int fileCount;
+    private long bytesRead;
+    private long bytesWritten;
+
+    /**
+     * @param memoryBytes memory for the successor buffer and the merge buffers together
+     * @param tempDirectory directory to put the layer and run files into, null for the default
+     * @param exhaustive continue until every reachable state is found, also after the goal
+     */
+    public ExternalBFS(long memoryBytes, String tempDirectory, boolean exhaustive) {
+        this.memoryBytes = Math.max(memoryBytes, 4L * BLOCK_BYTES);
+        this.tempDirectory = Paths.get(tempDirectory != null ? tempDirectory : System.getProperty("java.io.tmpdir"));
+        this.exhaustive = exhaustive;
+    }
+
+    public void runAlgorithm(String filePath) throws IOException {
+
+        StateSpace space = StateSpace.load(filePath);
+        SearchResult result = search(space);
+        System.out.println(result.format("# BFS", space));
+    }
+
+    /**
+     * Runs the search in a fresh work directory, which is deleted afterwards. A line with
+     * the size of every finished layer and the I/O so far is printed to standard error.
+     */
+    public SearchResult search(StateSpace space) throws IOException {
+
+        workDirectory = Files.createTempDirectory(tempDirectory, "ebfs");
+        fileCount = 0;
+        bytesRead = 0;
+        bytesWritten = 0;
+        try {
+            return searchLayers(space);
+        } finally {
+            try (Stream<Path> files = Files.list(workDirectory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(workDirectory);
+        }
+    }
+
+    private SearchResult searchLayers(StateSpace space) throws IOException {
+
+        boolean reversible = space.isReversible();
+        long initialState = space.getInitialState();
+
+        ArrayList<Path> layers = new ArrayList<>();
+        StringJoiner layerSizes = new StringJoiner(" ");
+        Path visited = null;
+
+        Path firstLayer = newFile();
+        try (LongWriter writer = new LongWriter(firstLayer)) {
+            writer.write(initialState);
+        }
+        layers.add(firstLayer);
+        if (!reversible) {
+            visited = newFile();
+            Files.copy(firstLayer, visited, StandardCopyOption.REPLACE_EXISTING);
+        }
+        layerSizes.add("1");
+        long statesReached = 1;
+        report(0, 1);
+
+        //goal layer, goal state and the number of states expanded before it
+        int goalLayer = space.isGoal(initialState) ? 0 : -1;
+        long goalState = initialState;
+        long statesVisited = 0;
+        long statesBeforeLayer = 0;
+        long layerSize = 1;
+
+        Successors successors = new Successors();
+        long[] buffer = new long[(int) Math.min(Integer.MAX_VALUE - 8, memoryBytes / 2 / Long.BYTES)];
+        while (layerSize > 0 && (goalLayer < 0 || exhaustive)) {
+
+            List<Path> runs = expand(space, layers.get(layers.size() - 1), successors, buffer);
+            runs = mergeRuns(runs);
+
+            ArrayList<Path> seen = new ArrayList<>();
+            if (reversible) {
+                seen.add(layers.get(layers.size() - 1));
+                if (layers.size() > 1) {
+                    seen.add(layers.get(layers.size() - 2));
+                }
+            } else {
+                seen.add(visited);
+            }
+
+            Path layer = newFile();
+            Path nextVisited = reversible ? null : newFile();
+            statesBeforeLayer += layerSize;
+            layerSize = 0;
+
+            try (Merger merger = new Merger(runs);
+                 LongWriter layerWriter = new LongWriter(layer);
+                 LongWriter visitedWriter = nextVisited != null ? new LongWriter(nextVisited) : null) {
+
+                LongReader[] seenReaders = new LongReader[seen.size()];
+                try {
+                    for (int i = 0; i < seenReaders.length; i++) {
+                        seenReaders[i] = new LongReader(seen.get(i));
+                    }
+
+                    while (merger.hasNext()) {
+                        long state = merger.next();
+
+                        boolean known = false;
+                        for (LongReader reader : seenReaders) {
+                            while (reader.hasNext() && reader.peek() < state) {
+                                long seenState = reader.next();
+                                if (visitedWriter != null) {
+                                    visitedWriter.write(seenState);
+                                }
+                            }
+                            known |= reader.hasNext() && reader.peek() == state;
+                        }
+                        if (known)
+                            continue;
+
+                        if (goalLayer < 0 && space.isGoal(state)) {
+                            goalLayer = layers.size();
+                            goalState = state;
+                            statesVisited = statesBeforeLayer + layerSize;
+                        }
+                        layerWriter.write(state);
+                        if (visitedWriter != null) {
+                            visitedWriter.write(state);
+                        }
+                        layerSize++;
+                    }
+
+                    if (visitedWriter != null) {
+                        while (seenReaders[0].hasNext()) {
+                            visitedWriter.write(seenReaders[0].next());
+                        }
+                    }
+                } finally {
+                    for (LongReader reader : seenReaders) {
+                        if (reader != null) {
+                            reader.close();
+                        }
+                    }
+                }
+            }
+
+            for (Path run : runs) {
+                Files.delete(run);
+            }
+            if (!reversible) {
+                Files.delete(visited);
+                visited = nextVisited;
+            }
+
+            if (layerSize > 0) {
+                layers.add(layer);
+                layerSizes.add(String.valueOf(layerSize));
+                statesReached += layerSize;
+                report(layers.size() - 1, layerSize);
+            }
+        }
+
+        SearchResult result;
+        if (goalLayer < 0) {
+            result = SearchResult.notFound((int) Math.min(statesBeforeLayer, Integer.MAX_VALUE));
+        } else {
+            result = tracePath(space, layers, goalLayer, goalState, (int) Math.min(statesVisited, Integer.MAX_VALUE),
+                    successors);
+        }
+        return result.addDetail("LAYERS", layerSizes)
+                .addDetail("STATES_REACHED", statesReached)
+                .addDetail("BYTES_READ", bytesRead)
+                .addDetail("BYTES_WRITTEN", bytesWritten);
+    }
+
+    /**
+     * Writes the successors of every state of a layer as sorted runs of distinct states.
+     */
+    private List<Path> expand(StateSpace space, Path layer, Successors successors, long[] buffer)
+            throws IOException {
+
+        int size = 0;
+        ArrayList<Path> runs = new ArrayList<>();
+
+        try (LongReader reader = new LongReader(layer)) {
+            while (reader.hasNext()) {
+                space.successors(reader.next(), successors);
+                for (int i = 0; i < successors.size(); i++) {
+                    if (size == buffer.length) {
+                        runs.add(writeRun(buffer, size));
+                        size = 0;
+                    }
+                    buffer[size++] = successors.getState(i);
+                }
+            }
+        }
+        if (size > 0 || runs.isEmpty()) {
+            runs.add(writeRun(buffer, size));
+        }
+        return runs;
+    }
+
+    private Path writeRun(long[] buffer, int size) throws IOException {
+
+        Arrays.sort(buffer, 0, size);
+        Path run = newFile();
+        try (LongWriter writer = new LongWriter(run)) {
+            for (int i = 0; i < size; i++) {
+                if (i == 0 || buffer[i] != buffer[i - 1]) {
+                    writer.write(buffer[i]);
+                }
+            }
+        }
+        return run;
+    }
+
+    /**
+     * Merges groups of runs until few enough are left to be read all at once within the
+     * memory cap.
+     */
+    private List<Path> mergeRuns(List<Path> runs) throws IOException {
+
+        int fanIn = (int) Math.max(2, memoryBytes / 2 / BLOCK_BYTES - RESERVED_READERS);
+        while (runs.size() > fanIn) {
+            ArrayList<Path> merged = new ArrayList<>();
+            for (int begin = 0; begin < runs.size(); begin += fanIn) {
+                List<Path> group = runs.subList(begin, Math.min(runs.size(), begin + fanIn));
+                Path run = newFile();
+                try (Merger merger = new Merger(group); LongWriter writer = new LongWriter(run)) {
+                    while (merger.hasNext()) {
+                        writer.write(merger.next());
+                    }
+                }
+                for (Path path : group) {
+                    Files.delete(path);
+                }
+                merged.add(run);
+            }
+            runs = merged;
+        }
+        return runs;
+    }
+
+    private SearchResult tracePath(StateSpace space, List<Path> layers, int goalLayer, long goalState,
+                                   int statesVisited, Successors successors) throws IOException {
+
+        long[] path = new long[goalLayer + 1];
+        double[] edgeCosts = new double[goalLayer];
+        path[goalLayer] = goalState;
+
+        for (int depth = goalLayer - 1; depth >= 0; depth--) {
+            long target = path[depth + 1];
+            try (LongReader reader = new LongReader(layers.get(depth))) {
+                while (reader.hasNext()) {
+                    long state = reader.next();
+                    double edgeCost = Double.POSITIVE_INFINITY;
+                    space.successors(state, successors);
+                    for (int i = 0; i < successors.size(); i++) {
+                        if (successors.getState(i) == target) {
+                            edgeCost = Math.min(edgeCost, successors.getCost(i));
+                        }
+                    }
+                    if (edgeCost != Double.POSITIVE_INFINITY) {
+                        path[depth] = state;
+                        edgeCosts[depth] = edgeCost;
+                        break;
+                    }
+                }
+            }
+        }
+
+        //the path is traced from the goal, but the cost is summed from the start like everywhere else
+        double totalCost = 0;
+        for (double edgeCost : edgeCosts) {
+            totalCost += edgeCost;
+        }
+        return SearchResult.found(statesVisited, totalCost, path);
+    }
+
+    private void report(int depth, long size) {
+        System.err.println("[LAYER]: " + depth + ", " + size + " states, " + bytesRead + " bytes read, "
+                + bytesWritten + " bytes written");
+    }
+
+    private Path newFile() {
+        return workDirectory.resolve(String.format("%06d.bin", fileCount++));
+    }
+
+    /**
+     * Sequential writer of longs through a direct buffer.
+     */
+    private class LongWriter implements Closeable {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BLOCK_BYTES);
+
+        LongWriter(Path path) throws IOException {
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE);
+        }
+
+        void write(long value) throws IOException {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            buffer.putLong(value);
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                bytesWritten += channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+            channel.close();
+        }
+    }
+
+    /**
+     * Sequential reader of longs through a direct buffer, with one value of lookahead.
+     */
+    private class LongReader implements Closeable {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BLOCK_BYTES);
+        private boolean hasNext;
+        private long next;
+
+        LongReader(Path path) throws IOException {
+            this.channel = FileChannel.open(path, StandardOpenOption.READ);
+            buffer.limit(0);
+            advance();
+        }
+
+        boolean hasNext() {
+            return hasNext;
+        }
+
+        long peek() {
+            return next;
+        }
+
+        long next() throws IOException {
+            long value = next;
+            advance();
+            return value;
+        }
+
+        private void advance() throws IOException {
+            if (buffer.remaining() < Long.BYTES) {
+                buffer.clear();
+                int read = 0;
+                while (buffer.hasRemaining() && read >= 0) {
+                    read = channel.read(buffer);
+                    if (read > 0) {
+                        bytesRead += read;
+                    }
+                }
+                buffer.flip();
+            }
+            hasNext = buffer.remaining() >= Long.BYTES;
+            if (hasNext) {
+                next = buffer.getLong();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * Merges sorted runs into one sorted sequence of distinct states, with a binary heap of
+     * the runs by their next state.
+     */
+    private class Merger implements Closeable {
+
+        private final LongReader[] readers;
+        private final int[] heap;
+        private int size;
+        private boolean hasLast;
+        private long last;
+
+        Merger(List<Path> runs) throws IOException {
+            this.readers = new LongReader[runs.size()];
+            this.heap = new int[runs.size()];
+            try {
+                for (int i = 0; i < readers.length; i++) {
+                    readers[i] = new LongReader(runs.get(i));
+                    if (readers[i].hasNext()) {
+                        heap[size] = i;
+                        size++;
+                        siftUp(size - 1);
+                    }
+                }
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+            skipDuplicates();
+        }
+
+        boolean hasNext() {
+            return size > 0;
+        }
+
+        long next() throws IOException {
+            long value = pop();
+            hasLast = true;
+            last = value;
+            skipDuplicates();
+            return value;
+        }
+
+        private void skipDuplicates() throws IOException {
+            while (hasLast && size > 0 && readers[heap[0]].peek() == last) {
+                pop();
+            }
+        }
+
+        private long pop() throws IOException {
+            LongReader reader = readers[heap[0]];
+            long value = reader.next();
+            if (!reader.hasNext()) {
+                heap[0] = heap[--size];
+            }
+            if (size > 0) {
+                siftDown(0);
+            }
+            return value;
+        }
+
+        private void siftUp(int index) {
+            int run = heap[index];
+            while (index > 0 && readers[heap[(index - 1) >>> 1]].peek() > readers[run].peek()) {
+                heap[index] = heap[(index - 1) >>> 1];
+                index = (index - 1) >>> 1;
+            }
+            heap[index] = run;
+        }
+
+        private void siftDown(int index) {
+            int run = heap[index];
+            while (2 * index + 1 < size) {
+                int child = 2 * index + 1;
+                if (child + 1 < size && readers[heap[child + 1]].peek() < readers[heap[child]].peek()) {
+                    child++;
+                }
+                if (readers[heap[child]].peek() >= readers[run].peek()) {
+                    break;
+                }
+                heap[index] = heap[child];
+                index = child;
+            }
+            heap[index] = run;
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (LongReader reader : readers) {
+                if (reader != null) {
+                    reader.close();
+                }
+            }
+        }
+    }
+
+}
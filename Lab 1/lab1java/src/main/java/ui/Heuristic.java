@@ -0,0 +1,10 @@
+package ui;
+
+/**
+ * Estimate of the remaining cost from a state to the nearest goal state.
+ */
+public interface Heuristic {
+
+    double estimate(long state);
+
+}
@@ -0,0 +1,24 @@
+package ui;
+
+/**
+ * Heuristic given as one value per state id, read from a heuristic file or from the
+ * heuristic column of a state space snapshot.
+ */
+public class HeuristicTable implements Heuristic {
+
+    private final DoubleColumn values;
+
+    public HeuristicTable(DoubleColumn values) {
+        this.values = values;
+    }
+
+    @Override
+    public double estimate(long state) {
+        return values.get((int) state);
+    }
+
+    public DoubleColumn getValues() {
+        return values;
+    }
+
+}
@@ -1,212 +1,297 @@
 package ui;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.*;
-
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Checks a heuristic for optimism and consistency. The states are split into chunks that
+ * are checked on a thread pool, a few chunks per thread at a time, and the chunk reports are
+ * written in state order, so the full report is the same as that of a sequential check.
+ * In summary mode no per state or per edge line is formatted at all, only the counts and
+ * the worst violations are printed.
+ */
 public class HeuristicValidator {
 
-    private TreeSet<String> allStateNames;
-    private TreeMap<Node, TreeSet<Node>> allStates;
-    private HashMap<String, Double> heuristicsMap;
-
-    private class Node implements Comparable<Node>{
-        private final String name;
-        private double cost;
-        private double heuristic;
-        private Node parent;
-        private TreeSet<Node> neighbours;
-
-        public Node(String name, double cost, double heuristic) {
-            this.name = name;
-            this.cost = cost;
-            this.heuristic = heuristic;
-            this.parent = null;
-            this.neighbours = new TreeSet<>();
-        }
-
-        public String getName() {
-            return name;
-        }
-
-        public double getCost() {
-            return cost;
-        }
-
-        public void setCost(double cost) {
-            this.cost = cost;
-        }
-
-        public void increaseCost(double cost) {
-            this.cost += cost;
-        }
-
-        public double getHeuristic() {
-            return heuristic;
-        }
-
-        public Node getParent() {
-            return parent;
-        }
+    //states per chunk of the optimism check, edges per chunk of the consistency check
+    private static final int CHUNK_STATES = 1 << 14;
+    private static final int CHUNK_EDGES = 1 << 16;
+    private static final int CHUNKS_PER_THREAD = 4;
 
-        public void setParent(Node parent) {
-            this.parent = parent;
-        }
+    private final int threads;
+    private final boolean summary;
+    private final int topCount;
 
-        public TreeSet<Node> getNeighbours() {
-            return neighbours;
-        }
+    private StateGraph graph;
+    private Heuristic heuristic;
 
-        public void appendNeighbour(Node neighbour) {
-            this.neighbours.add(neighbour);
-        }
+    public HeuristicValidator() {
+        this(1, false, 0);
+    }
 
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
-            Node node = (Node) o;
-            return name.equals(node.name);
-        }
+    /**
+     * @param threads number of chunks checked at the same time
+     * @param summary print only the counts and the worst violations instead of every condition
+     * @param topCount number of worst violations printed in summary mode
+     */
+    public HeuristicValidator(int threads, boolean summary, int topCount) {
+        this.threads = Math.max(1, threads);
+        this.summary = summary;
+        this.topCount = topCount;
+    }
 
-        @Override
-        public int hashCode() {
-            return Objects.hash(name);
+    /**
+     * Violated condition, ordered from the largest excess of h over its bound down, equal
+     * excesses by position in the report.
+     */
+    private static class Violation implements Comparable<Violation> {
+        private final double excess;
+        private final int state;
+        private final int edge;
+
+        Violation(double excess, int state, int edge) {
+            this.excess = excess;
+            this.state = state;
+            this.edge = edge;
         }
 
         @Override
-        public int compareTo(Node otherNode) {
-            return this.name.compareTo(otherNode.getName());
+        public int compareTo(Violation other) {
+            if (excess != other.excess) {
+                return Double.compare(other.excess, excess);
+            }
+            return state != other.state ? Integer.compare(state, other.state) : Integer.compare(edge, other.edge);
         }
-
     }
 
-    private void setHeuristicsMap(String filePath) throws IOException {
-
-        heuristicsMap = new HashMap<>();
-        BufferedReader reader = new BufferedReader(new FileReader(filePath));
-
-        String line = reader.readLine();
-        while (line != null) {
-
-            if (line.startsWith("#")) {
-                line = reader.readLine();
+    /**
+     * Outcome of one chunk: its report lines, unless in summary mode, and its counts.
+     */
+    private class Chunk {
+        private final StringBuilder report = summary ? null : new StringBuilder();
+        //worst violations kept, the least bad of them on top
+        private final PriorityQueue<Violation> worst = new PriorityQueue<>(Comparator.reverseOrder());
+        private long checked;
+        private long violations;
+
+        void add(boolean ok, double excess, int state, int edge) {
+            checked++;
+            if (ok)
+                return;
+            violations++;
+            if (topCount > 0) {
+                worst.add(new Violation(excess, state, edge));
+                if (worst.size() > topCount) {
+                    worst.poll();
+                }
             }
-
-            String[] stateAndHeuristic = line.split(": ");
-            heuristicsMap.put(stateAndHeuristic[0], Double.parseDouble(stateAndHeuristic[1]));
-            line = reader.readLine();
         }
+    }
 
+    private interface ChunkBody {
+        void check(int beginState, int endState, Chunk chunk);
     }
 
-    private void argumentsInit(String filePath) throws IOException {
+    private void argumentsInit(String filePathStateSpace, String filePathHeuristics) throws IOException {
 
-        BufferedReader reader = new BufferedReader(new FileReader(filePath));
-        allStateNames = new TreeSet<>();
-        allStates = new TreeMap<>();
+        graph = StateGraph.load(filePathStateSpace);
+        heuristic = filePathHeuristics != null ? graph.openHeuristics(filePathHeuristics) : graph.getHeuristics();
+    }
 
-        String line = reader.readLine();
-        while (line.startsWith("#")) {
-            line = reader.readLine();
-        }
+    public void checkOptimism(String filePathStateSpace, String filePathHeuristics) throws IOException {
 
-        String startNodeName = line;
+        argumentsInit(filePathStateSpace, filePathHeuristics);
 
-        line = reader.readLine();
-        while (line.startsWith("#")) {
-            line = reader.readLine();
-        }
+        UCS ucs = new UCS();
+        double[] costsToGoal = ucs.runAlgorithmToGoals(graph);
 
-        line = reader.readLine();
-        while (line != null) {
+        int[] boundaries = new int[(graph.getStateCount() + CHUNK_STATES - 1) / CHUNK_STATES + 1];
+        for (int i = 0; i < boundaries.length; i++) {
+            boundaries[i] = Math.min(graph.getStateCount(), i * CHUNK_STATES);
+        }
 
-            if(line.startsWith("#")){
-                line = reader.readLine();
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+        out.write("# HEURISTIC-OPTIMISTIC " + filePathHeuristics + System.lineSeparator());
+
+        //state ids follow alphabetical order of the names
+        Chunk total = check(boundaries, out, (beginState, endState, chunk) -> {
+            for(int state = beginState; state < endState; state++) {
+                double totalCost = costsToGoal[state] == Double.POSITIVE_INFINITY ? -1.0 : costsToGoal[state];
+                double stateHeuristic = heuristic.estimate(state);
+                boolean ok = stateHeuristic <= totalCost;
+                chunk.add(ok, stateHeuristic - totalCost, state, -1);
+                if (chunk.report != null) {
+                    chunk.report.append(optimismCondition(ok, state, stateHeuristic, totalCost)).append(System.lineSeparator());
+                }
             }
-
-            String[] stateAndNeighbours = line.split(": ");
-
-            if(stateAndNeighbours.length == 1) {
-                stateAndNeighbours[0] = stateAndNeighbours[0].substring(0, stateAndNeighbours[0].length() - 1);
+        });
+
+        if (summary) {
+            out.write("[STATES_CHECKED]: " + total.checked + System.lineSeparator());
+            out.write("[VIOLATIONS]: " + total.violations + System.lineSeparator());
+            for (Violation violation : sorted(total.worst)) {
+                double totalCost = costsToGoal[violation.state] == Double.POSITIVE_INFINITY ? -1.0 : costsToGoal[violation.state];
+                out.write(optimismCondition(false, violation.state, heuristic.estimate(violation.state), totalCost)
+                        + System.lineSeparator());
             }
+        }
 
-            String newNodeName = stateAndNeighbours[0];
-            allStateNames.add(newNodeName);
+        out.write("[CONCLUSION]: Heuristic is" + (total.violations > 0 ? " not " : " ") + "optimistic." + System.lineSeparator());
+        out.flush();
+    }
 
-            TreeSet<Node> neighboursSet = new TreeSet<>();
-            if(stateAndNeighbours.length > 1) {
-                String neighboursUnsplit = stateAndNeighbours[1];
-                String[] neighbours = neighboursUnsplit.split(" ");
+    public void checkConsistency(String filePathStateSpace, String filePathHeuristics) throws IOException {
 
-                for (String neighbour : neighbours) {
-                    String[] nameAndCost = neighbour.split(",");
-                    String name = nameAndCost[0];
-                    double cost = Double.parseDouble(nameAndCost[1]);
+        argumentsInit(filePathStateSpace, filePathHeuristics);
 
-                    Node neigbourNode = new Node(name, cost, heuristicsMap.get(name));
-                    neighboursSet.add(neigbourNode);
-                }
+        //cut the states where the edge range reaches the next multiple of the chunk size
+        ArrayList<Integer> cuts = new ArrayList<>();
+        cuts.add(0);
+        for (int state = 0; state < graph.getStateCount(); state++) {
+            if (graph.getEdgesEnd(state) - graph.getEdgesBegin(cuts.get(cuts.size() - 1)) >= CHUNK_EDGES) {
+                cuts.add(state + 1);
             }
-
-            Node newNode = new Node(newNodeName, 0, heuristicsMap.get(newNodeName));
-            allStates.put(newNode, neighboursSet);
-            line = reader.readLine();
         }
-        reader.close();
-    }
-
-    public void checkOptimism(String filePathStateSpace, String filePathHeuristics) throws IOException {
-
-        setHeuristicsMap(filePathHeuristics);
-        argumentsInit(filePathStateSpace);
-
-        UCS ucs = new UCS();
-        boolean error = false;
-
-        System.out.println("# HEURISTIC-OPTIMISTIC " + filePathHeuristics);
-
-        for(String stateName : allStateNames) {
-            double totalCost = ucs.runAlgorithmFromState(filePathStateSpace, stateName);
-            double heuristic = heuristicsMap.get(stateName);
-            if(heuristic <= totalCost) {
-                System.out.println("[CONDITION]: [OK] h(" + stateName + ") <= h*: " + String.format(Locale.US,"%.1f", heuristic) + " <= " + String.format(Locale.US,"%.1f", totalCost));
-            } else {
-                System.out.println("[CONDITION]: [ERR] h(" + stateName + ") <= h*: " + String.format(Locale.US,"%.1f", heuristic) + " <= " + String.format(Locale.US,"%.1f", totalCost));
-                error = true;
+        if (cuts.get(cuts.size() - 1) != graph.getStateCount()) {
+            cuts.add(graph.getStateCount());
+        }
+        int[] boundaries = cuts.stream().mapToInt(Integer::intValue).toArray();
+
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+        out.write("# HEURISTIC-CONSISTENT " + filePathHeuristics + System.lineSeparator());
+
+        Chunk total = check(boundaries, out, (beginState, endState, chunk) -> {
+            for(int state = beginState; state < endState; state++) {
+                double stateHeuristic = heuristic.estimate(state);
+                for(int edge = graph.getEdgesBegin(state); edge < graph.getEdgesEnd(state); edge++) {
+
+                    int neighbour = graph.getEdgeTarget(edge);
+                    double cost = graph.getEdgeCost(edge);
+                    double neighbourHeuristic = heuristic.estimate(neighbour);
+                    boolean ok = stateHeuristic <= neighbourHeuristic + cost;
+                    chunk.add(ok, stateHeuristic - (neighbourHeuristic + cost), state, edge);
+                    if (chunk.report != null) {
+                        chunk.report.append(consistencyCondition(ok, state, edge, stateHeuristic)).append(System.lineSeparator());
+                    }
+                }
+            }
+        });
+
+        if (summary) {
+            out.write("[EDGES_CHECKED]: " + total.checked + System.lineSeparator());
+            out.write("[VIOLATIONS]: " + total.violations + System.lineSeparator());
+            for (Violation violation : sorted(total.worst)) {
+                out.write(consistencyCondition(false, violation.state, violation.edge, heuristic.estimate(violation.state))
+                        + System.lineSeparator());
             }
         }
 
-        System.out.println("[CONCLUSION]: Heuristic is" + (error ? " not " : " ") + "optimistic.");
-
+        out.write("[CONCLUSION]: Heuristic is" + (total.violations > 0 ? " not " : " ") + "consistent." + System.lineSeparator());
+        out.flush();
     }
 
-    public void checkConsistency(String filePathStateSpace, String filePathHeuristics) throws IOException {
+    private String optimismCondition(boolean ok, int state, double stateHeuristic, double totalCost) {
+        return new StringBuilder("[CONDITION]: ").append(ok ? "[OK]" : "[ERR]")
+                .append(" h(").append(graph.getStateName(state)).append(") <= h*: ")
+                .append(oneDecimal(stateHeuristic)).append(" <= ").append(oneDecimal(totalCost))
+                .toString();
+    }
 
-        setHeuristicsMap(filePathHeuristics);
-        argumentsInit(filePathStateSpace);
+    private String consistencyCondition(boolean ok, int state, int edge, double stateHeuristic) {
+        int neighbour = graph.getEdgeTarget(edge);
+        return new StringBuilder("[CONDITION]: ").append(ok ? "[OK]" : "[ERR]")
+                .append(" h(").append(graph.getStateName(state)).append(") <= h(")
+                .append(graph.getStateName(neighbour)).append(") + c: ")
+                .append(oneDecimal(stateHeuristic)).append(" <= ").append(oneDecimal(heuristic.estimate(neighbour)))
+                .append(" + ").append(oneDecimal(graph.getEdgeCost(edge)))
+                .toString();
+    }
 
-        boolean error = false;
+    /**
+     * Same text as "%.1f". Whole numbers, the usual costs and estimates, skip the formatter.
+     */
+    private static String oneDecimal(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15 && (value != 0 || 1 / value > 0)) {
+            return (long) value + ".0";
+        }
+        return String.format(Locale.US, "%.1f", value);
+    }
 
-        System.out.println("# HEURISTIC-CONSISTENT " + filePathHeuristics);
+    private static List<Violation> sorted(PriorityQueue<Violation> worst) {
+        ArrayList<Violation> violations = new ArrayList<>(worst);
+        Collections.sort(violations);
+        return violations;
+    }
 
-        for(Map.Entry<Node, TreeSet<Node>> entry : allStates.entrySet()) {
-            Node currentNode = entry.getKey();
-            TreeSet<Node> neighbours = entry.getValue();
-            for(Node neighbour : neighbours) {
+    /**
+     * Checks the chunks between consecutive boundaries, a batch of them at a time, and
+     * writes their reports in order as soon as the batch is done.
+     *
+     * @param boundaries first state of every chunk, followed by the state count
+     * @param out writer for the reports
+     * @param body check of the states of one chunk
+     * @return counts of all chunks with the worst violations among them
+     * @throws IOException if writing a report fails or the check is interrupted, before any
+     *                     conclusion is printed
+     */
+    private Chunk check(int[] boundaries, Writer out, ChunkBody body) throws IOException {
+
+        Chunk total = new Chunk();
+        int chunkCount = boundaries.length - 1;
+        int batchSize = threads * CHUNKS_PER_THREAD;
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            for (int batchBegin = 0; batchBegin < chunkCount; batchBegin += batchSize) {
+
+                ArrayList<Callable<Chunk>> tasks = new ArrayList<>();
+                for (int i = batchBegin; i < Math.min(chunkCount, batchBegin + batchSize); i++) {
+                    int beginState = boundaries[i];
+                    int endState = boundaries[i + 1];
+                    tasks.add(() -> {
+                        Chunk chunk = new Chunk();
+                        body.check(beginState, endState, chunk);
+                        return chunk;
+                    });
+                }
 
-                if(currentNode.getHeuristic() <= neighbour.getHeuristic() + neighbour.getCost()) {
-                    System.out.println("[CONDITION]: [OK] h(" + currentNode.getName() + ") <= h(" + neighbour.getName() + ") + c: " + String.format(Locale.US,"%.1f", currentNode.getHeuristic()) + " <= " + String.format(Locale.US,"%.1f", neighbour.getHeuristic()) + " + " + String.format(Locale.US,"%.1f", neighbour.getCost()));
-                } else {
-                    System.out.println("[CONDITION]: [ERR] h(" + currentNode.getName() + ") <= h(" + neighbour.getName() + ") + c: " + String.format(Locale.US,"%.1f", currentNode.getHeuristic()) + " <= " + String.format(Locale.US,"%.1f", neighbour.getHeuristic()) + " + " + String.format(Locale.US,"%.1f", neighbour.getCost()));
-                    error = true;
+                for (Future<Chunk> task : pool.invokeAll(tasks)) {
+                    Chunk chunk = task.get();
+                    if (chunk.report != null) {
+                        out.append(chunk.report);
+                    }
+                    total.checked += chunk.checked;
+                    total.violations += chunk.violations;
+                    for (Violation violation : chunk.worst) {
+                        total.worst.add(violation);
+                        if (total.worst.size() > topCount) {
+                            total.worst.poll();
+                        }
+                    }
                 }
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while checking the heuristic", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } finally {
+            pool.shutdown();
         }
-
-        System.out.println("[CONCLUSION]: Heuristic is" + (error ? " not " : " ") + "consistent.");
-
+        return total;
     }
 
 }
@@ -0,0 +1,116 @@
+package ui;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Iterative deepening A*. Every iteration is a depth-first search that cuts off paths
+ * whose f value exceeds the current threshold, the next threshold is the smallest f value
+ * that was cut off. Only the current path is kept, so memory grows with the depth of the
+ * solution instead of with the number of reached states.
+ */
+public class IDASTAR {
+
+    public void runAlgorithm(String filePathStateSpace, String filePathHeuristics) throws IOException {
+
+        StateGraph graph = StateGraph.load(filePathStateSpace);
+
+        //without a heuristic file, use the heuristic column of a snapshot
+        Heuristic heuristic = filePathHeuristics != null ? graph.openHeuristics(filePathHeuristics) : graph.getHeuristics();
+        String heuristicName = filePathHeuristics != null ? filePathHeuristics : filePathStateSpace;
+
+        SearchResult result = search(graph, graph.getStartState(), graph.getGoalStates(), heuristic);
+        System.out.println(result.format("# IDA-STAR " + heuristicName, graph));
+    }
+
+    public SearchResult search(StateGraph graph, int startState, BitSet goalStates, Heuristic heuristic) {
+
+        int statesVisited = 0;
+        int iterations = 0;
+        int peakNodes = 1;
+
+        //the current path, with the cost to reach every state and the next edge to try from it
+        int[] pathStates = new int[64];
+        double[] pathCosts = new double[64];
+        int[] nextEdges = new int[64];
+
+        double threshold = heuristic.estimate(startState);
+        while (true) {
+
+            iterations++;
+            double nextThreshold = Double.POSITIVE_INFINITY;
+
+            pathStates[0] = startState;
+            pathCosts[0] = 0;
+            nextEdges[0] = graph.getEdgesBegin(startState);
+            int depth = 1;
+            statesVisited++;
+
+            if (goalStates.get(startState)) {
+                return found(graph, statesVisited, iterations, peakNodes, pathStates, depth);
+            }
+
+            while (depth > 0) {
+
+                int currentState = pathStates[depth - 1];
+                if (nextEdges[depth - 1] == graph.getEdgesEnd(currentState)) {
+                    depth--;
+                    continue;
+                }
+
+                int edge = nextEdges[depth - 1]++;
+                int neighbour = graph.getEdgeTarget(edge);
+                double cost = pathCosts[depth - 1] + graph.getEdgeCost(edge);
+
+                double estimate = cost + heuristic.estimate(neighbour);
+                if (estimate > threshold) {
+                    nextThreshold = Math.min(nextThreshold, estimate);
+                    continue;
+                }
+                if (onPath(pathStates, depth, neighbour))
+                    continue;
+
+                if (depth == pathStates.length) {
+                    pathStates = Arrays.copyOf(pathStates, depth * 2);
+                    pathCosts = Arrays.copyOf(pathCosts, depth * 2);
+                    nextEdges = Arrays.copyOf(nextEdges, depth * 2);
+                }
+                pathStates[depth] = neighbour;
+                pathCosts[depth] = cost;
+                nextEdges[depth] = graph.getEdgesBegin(neighbour);
+                depth++;
+                peakNodes = Math.max(peakNodes, depth);
+                statesVisited++;
+
+                //threshold never exceeds the optimal cost, so the first goal within it is optimal
+                if (goalStates.get(neighbour)) {
+                    return found(graph, statesVisited, iterations, peakNodes, pathStates, depth);
+                }
+            }
+
+            if (nextThreshold == Double.POSITIVE_INFINITY) {
+                return SearchResult.notFound(statesVisited)
+                        .addDetail("ITERATIONS", iterations)
+                        .addDetail("PEAK_NODES", peakNodes);
+            }
+            threshold = nextThreshold;
+        }
+    }
+
+    private static boolean onPath(int[] pathStates, int depth, int state) {
+        for (int i = 0; i < depth; i++) {
+            if (pathStates[i] == state) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static SearchResult found(StateGraph graph, int statesVisited, int iterations, int peakNodes,
+                                      int[] pathStates, int depth) {
+        return SearchResult.ofPath(statesVisited, graph, Arrays.copyOf(pathStates, depth))
+                .addDetail("ITERATIONS", iterations)
+                .addDetail("PEAK_NODES", peakNodes);
+    }
+
+}
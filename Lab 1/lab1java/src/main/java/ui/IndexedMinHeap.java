@@ -0,0 +1,148 @@
+package ui;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap over state ids with a position index, so membership is O(1) and
+ * decrease-key is O(log n). Entries are ordered by key, equal keys by smaller state id,
+ * which is the alphabetical tie-breaking of the searches. The heap grows when a state
+ * beyond its capacity is inserted.
+ */
+public class IndexedMinHeap implements OpenList {
+
+    private int[] heap;
+    private int[] positions;
+    private double[] keys;
+    private int size;
+
+    public IndexedMinHeap(int capacity) {
+        this.heap = new int[capacity];
+        this.positions = new int[capacity];
+        this.keys = new double[capacity];
+        this.size = 0;
+        Arrays.fill(positions, -1);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean contains(int state) {
+        return state < positions.length && positions[state] >= 0;
+    }
+
+    public double getKey(int state) {
+        return keys[state];
+    }
+
+    public int peek() {
+        return heap[0];
+    }
+
+    /**
+     * @param index position in the heap array, from 0 to size - 1
+     * @return state at that position, for visiting all entries in no particular order
+     */
+    public int get(int index) {
+        return heap[index];
+    }
+
+    @Override
+    public void insert(int state, double key) {
+        if (state >= positions.length) {
+            grow(state + 1);
+        }
+        keys[state] = key;
+        heap[size] = state;
+        positions[state] = size;
+        size++;
+        siftUp(size - 1);
+    }
+
+    /**
+     * Lowers the key of a state already in the heap. A key equal to the current one is
+     * accepted and leaves the heap unchanged.
+     */
+    @Override
+    public void decreaseKey(int state, double key) {
+        keys[state] = key;
+        siftUp(positions[state]);
+    }
+
+    @Override
+    public int poll() {
+        int state = heap[0];
+        size--;
+        positions[state] = -1;
+        if (size > 0) {
+            heap[0] = heap[size];
+            positions[heap[0]] = 0;
+            siftDown(0);
+        }
+        return state;
+    }
+
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            positions[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    private void grow(int minCapacity) {
+        int capacity = Math.max(minCapacity, Math.max(16, positions.length * 2));
+        int oldCapacity = positions.length;
+        heap = Arrays.copyOf(heap, capacity);
+        keys = Arrays.copyOf(keys, capacity);
+        positions = Arrays.copyOf(positions, capacity);
+        Arrays.fill(positions, oldCapacity, capacity, -1);
+    }
+
+    private boolean less(int state, int other) {
+        return keys[state] < keys[other] || (keys[state] == keys[other] && state < other);
+    }
+
+    private void siftUp(int index) {
+        int state = heap[index];
+        while (index > 0) {
+            int parentIndex = (index - 1) >>> 1;
+            int parent = heap[parentIndex];
+            if (!less(state, parent)) {
+                break;
+            }
+            heap[index] = parent;
+            positions[parent] = index;
+            index = parentIndex;
+        }
+        heap[index] = state;
+        positions[state] = index;
+    }
+
+    private void siftDown(int index) {
+        int state = heap[index];
+        int half = size >>> 1;
+        while (index < half) {
+            int childIndex = 2 * index + 1;
+            int child = heap[childIndex];
+            if (childIndex + 1 < size && less(heap[childIndex + 1], child)) {
+                childIndex++;
+                child = heap[childIndex];
+            }
+            if (!less(child, state)) {
+                break;
+            }
+            heap[index] = child;
+            positions[child] = index;
+            index = childIndex;
+        }
+        heap[index] = state;
+        positions[state] = index;
+    }
+
+}
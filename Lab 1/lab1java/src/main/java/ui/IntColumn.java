@@ -0,0 +1,45 @@
+package ui;
+
+import java.nio.IntBuffer;
+
+/**
+ * Int values indexed from 0, held in one buffer or split across several buffers of the
+ * same power of two length. A memory mapping holds less than 2 GB, so a snapshot section
+ * of more values is mapped in chunks.
+ */
+public class IntColumn {
+
+    private final IntBuffer[] chunks;
+    private final int shift;
+    private final int mask;
+    private final int size;
+
+    /**
+     * @param chunks buffers of 2^shift values each, the last one possibly shorter
+     * @param shift binary logarithm of the chunk length, 31 for a single buffer
+     * @param size number of values in all chunks
+     */
+    public IntColumn(IntBuffer[] chunks, int shift, int size) {
+        this.chunks = chunks;
+        this.shift = shift;
+        this.mask = (int) ((1L << shift) - 1);
+        this.size = size;
+    }
+
+    public static IntColumn of(IntBuffer values) {
+        return new IntColumn(new IntBuffer[]{values}, 31, values.limit());
+    }
+
+    public static IntColumn wrap(int[] values) {
+        return of(IntBuffer.wrap(values));
+    }
+
+    public int get(int index) {
+        return chunks[index >>> shift].get(index & mask);
+    }
+
+    public int size() {
+        return size;
+    }
+
+}
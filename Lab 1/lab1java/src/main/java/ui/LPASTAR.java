@@ -0,0 +1,490 @@
+package ui;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Lifelong planning A* (LPA*). Keeps the costs g of the last search between calls, so after
+ * edge costs change only the states whose cost is affected are expanded again instead of
+ * searching from scratch.
+ * <p>
+ * Every state has a one step lookahead rhs, the cheapest g of a predecessor plus the edge
+ * cost. States where g and rhs differ are inconsistent and wait in the open list ordered by
+ * [min(g, rhs) + h, min(g, rhs)]. A search expands them until the goal is consistent and no
+ * open state can lead to a cheaper goal. The heuristic has to stay consistent under the
+ * changed costs, which holds for any consistent heuristic as long as costs only increase.
+ * <p>
+ * The planner owns its copy of the edge costs and is not safe for concurrent use.
+ */
+public class LPASTAR {
+
+    private final StateGraph graph;
+    private final Heuristic heuristic;
+    private final double[] edgeCosts;
+
+    //incoming edges of every state, as the source state and the forward edge
+    private final int[] predecessorOffsets;
+    private final int[] predecessorStates;
+    private final int[] predecessorEdges;
+
+    //one extra state after the real ones stands for all goals, every goal leads to it for free
+    private final int goal;
+    private final double[] g;
+    private final double[] rhs;
+    private final int[] parents;
+    private final double[] estimates;
+    private final KeyHeap open;
+
+    /**
+     * @param graph state space with the start and goal states to plan between
+     * @param heuristic consistent heuristic, or null to search without one
+     */
+    public LPASTAR(StateGraph graph, Heuristic heuristic) {
+
+        this.graph = graph;
+        this.heuristic = heuristic;
+
+        int stateCount = graph.getStateCount();
+        int edgeCount = graph.getEdgeCount();
+        this.edgeCosts = new double[edgeCount];
+        for (int edge = 0; edge < edgeCount; edge++) {
+            edgeCosts[edge] = graph.getEdgeCost(edge);
+        }
+
+        this.predecessorOffsets = new int[stateCount + 1];
+        for (int edge = 0; edge < edgeCount; edge++) {
+            predecessorOffsets[graph.getEdgeTarget(edge) + 1]++;
+        }
+        for (int state = 0; state < stateCount; state++) {
+            predecessorOffsets[state + 1] += predecessorOffsets[state];
+        }
+        this.predecessorStates = new int[edgeCount];
+        this.predecessorEdges = new int[edgeCount];
+        int[] next = Arrays.copyOf(predecessorOffsets, stateCount);
+        for (int state = 0; state < stateCount; state++) {
+            for (int edge = graph.getEdgesBegin(state); edge < graph.getEdgesEnd(state); edge++) {
+                int slot = next[graph.getEdgeTarget(edge)]++;
+                predecessorStates[slot] = state;
+                predecessorEdges[slot] = edge;
+            }
+        }
+
+        this.goal = stateCount;
+        this.g = new double[stateCount + 1];
+        this.rhs = new double[stateCount + 1];
+        this.parents = new int[stateCount + 1];
+        this.estimates = new double[stateCount + 1];
+        Arrays.fill(g, Double.POSITIVE_INFINITY);
+        Arrays.fill(rhs, Double.POSITIVE_INFINITY);
+        Arrays.fill(parents, -1);
+        Arrays.fill(estimates, Double.NaN);
+        estimates[goal] = 0;
+        this.open = new KeyHeap(stateCount + 1);
+
+        int start = graph.getStartState();
+        rhs[start] = 0;
+        open.insert(start, estimate(start), 0);
+    }
+
+    public static void runAlgorithm(String filePathStateSpace, String filePathHeuristics, String filePathUpdates)
+            throws IOException {
+
+        StateGraph graph = StateGraph.load(filePathStateSpace);
+        Heuristic heuristic = filePathHeuristics != null ? graph.openHeuristics(filePathHeuristics) : null;
+        String header = "# LPA-STAR" + (filePathHeuristics != null ? " " + filePathHeuristics : "");
+
+        LPASTAR planner = new LPASTAR(graph, heuristic);
+        System.out.println(planner.search().format(header, graph));
+
+        if (filePathUpdates == null)
+            return;
+
+        int batchNumber = 0;
+        BufferedReader reader = new BufferedReader(new FileReader(filePathUpdates));
+        List<String> batch = nextBatch(reader);
+        while (!batch.isEmpty()) {
+            batchNumber++;
+            int updatedEdges = 0;
+            for (String line : batch) {
+                updatedEdges += planner.updateEdgeCosts(line);
+            }
+            SearchResult result = planner.search().addDetail("UPDATED_EDGES", updatedEdges);
+            System.out.println();
+            System.out.println(result.format(header + " update " + batchNumber, graph));
+            batch = nextBatch(reader);
+        }
+        reader.close();
+    }
+
+    /**
+     * Reads the lines of the next batch of updates. Batches are separated by blank lines,
+     * lines starting with # are skipped.
+     */
+    private static List<String> nextBatch(BufferedReader reader) throws IOException {
+
+        ArrayList<String> batch = new ArrayList<>();
+        String line = reader.readLine();
+        while (line != null && (line.isBlank() || line.startsWith("#"))) {
+            line = reader.readLine();
+        }
+        while (line != null && !line.isBlank()) {
+            if (!line.startsWith("#")) {
+                batch.add(line.trim());
+            }
+            line = reader.readLine();
+        }
+        return batch;
+    }
+
+    /**
+     * Applies one update line in the transition format of the state space file,
+     * "state: successor,cost ...". Every listed edge must exist in the graph.
+     *
+     * @return number of updated edges
+     * @throws IllegalArgumentException if the line is not in that format
+     */
+    private int updateEdgeCosts(String line) {
+
+        int separator = line.indexOf(": ");
+        if (separator < 0) {
+            throw new IllegalArgumentException("Expected \"state: successor,cost ...\", got " + line);
+        }
+        int source = stateId(line.substring(0, separator));
+
+        int updatedEdges = 0;
+        for (String neighbour : line.substring(separator + 2).trim().split(" ")) {
+            int comma = neighbour.lastIndexOf(',');
+            if (comma < 0) {
+                throw new IllegalArgumentException("Expected successor,cost but got \"" + neighbour + "\" in " + line);
+            }
+            int target = stateId(neighbour.substring(0, comma));
+            updatedEdges += updateEdgeCost(source, target, Double.parseDouble(neighbour.substring(comma + 1)));
+        }
+        return updatedEdges;
+    }
+
+    private int stateId(String name) {
+        int state = graph.getStateId(name);
+        if (state < 0) {
+            throw new IllegalArgumentException("Unknown state " + name);
+        }
+        return state;
+    }
+
+    /**
+     * Changes the cost of the edges from one state to another, taking effect on the next
+     * {@link #search()}. Parallel edges between the two states all get the new cost.
+     *
+     * @param source state the edge leaves
+     * @param target state the edge enters
+     * @param cost new cost, infinity closes the edge
+     * @return number of updated edges
+     * @throws IllegalArgumentException if there is no such edge
+     */
+    public int updateEdgeCost(int source, int target, double cost) {
+
+        if (cost < 0 || Double.isNaN(cost)) {
+            throw new IllegalArgumentException("Edge cost must not be negative, was " + cost);
+        }
+
+        int updatedEdges = 0;
+        for (int edge = firstEdge(source, target); edge < graph.getEdgesEnd(source)
+                && graph.getEdgeTarget(edge) == target; edge++) {
+
+            double oldCost = edgeCosts[edge];
+            edgeCosts[edge] = cost;
+            updatedEdges++;
+
+            if (target == graph.getStartState() || oldCost == cost)
+                continue;
+
+            if (cost < oldCost) {
+                if (g[source] + cost < rhs[target]) {
+                    rhs[target] = g[source] + cost;
+                    parents[target] = source;
+                }
+            } else if (parents[target] == source) {
+                //the cheapest way in got more expensive, another predecessor may be better now
+                updateRhs(target);
+            }
+            updateOpen(target);
+        }
+
+        if (updatedEdges == 0) {
+            throw new IllegalArgumentException("No edge from " + graph.getStateName(source)
+                    + " to " + graph.getStateName(target));
+        }
+        return updatedEdges;
+    }
+
+    public double getEdgeCost(int edge) {
+        return edgeCosts[edge];
+    }
+
+    /**
+     * Repairs the costs after the updates since the last search and returns the cheapest
+     * path to a goal state under the current edge costs.
+     *
+     * @return result with the number of states expanded by this call only
+     */
+    public SearchResult search() {
+
+        int statesVisited = 0;
+
+        //a goal state has the same key as the goal it leads to for free, so ties are expanded too
+        while (!open.isEmpty() && (open.atMost(open.peek(), key1(goal), key2(goal)) || rhs[goal] != g[goal])) {
+
+            int state = open.poll();
+            if (state != goal) {
+                statesVisited++;
+            }
+
+            if (g[state] > rhs[state]) {
+                //overconsistent, the cost is final and can only help the successors
+                g[state] = rhs[state];
+                forEachSuccessor(state, true);
+            } else {
+                //underconsistent, the old cost is gone and whatever relied on it is recomputed
+                g[state] = Double.POSITIVE_INFINITY;
+                if (state != graph.getStartState()) {
+                    updateRhs(state);
+                }
+                updateOpen(state);
+                forEachSuccessor(state, false);
+            }
+        }
+
+        if (g[goal] == Double.POSITIVE_INFINITY) {
+            return SearchResult.notFound(statesVisited);
+        }
+
+        return SearchResult.found(statesVisited, g[goal], parents, graph.getStartState(), parents[goal]);
+    }
+
+    private void forEachSuccessor(int state, boolean improved) {
+
+        if (state == goal)
+            return;
+
+        for (int edge = graph.getEdgesBegin(state); edge < graph.getEdgesEnd(state); edge++) {
+            int neighbour = graph.getEdgeTarget(edge);
+            if (neighbour == graph.getStartState())
+                continue;
+
+            if (improved) {
+                if (g[state] + edgeCosts[edge] < rhs[neighbour]) {
+                    rhs[neighbour] = g[state] + edgeCosts[edge];
+                    parents[neighbour] = state;
+                    updateOpen(neighbour);
+                }
+            } else if (parents[neighbour] == state) {
+                updateRhs(neighbour);
+                updateOpen(neighbour);
+            }
+        }
+
+        if (graph.isGoalState(state)) {
+            if (improved) {
+                if (g[state] < rhs[goal]) {
+                    rhs[goal] = g[state];
+                    parents[goal] = state;
+                    updateOpen(goal);
+                }
+            } else if (parents[goal] == state) {
+                updateRhs(goal);
+                updateOpen(goal);
+            }
+        }
+    }
+
+    private void updateRhs(int state) {
+
+        double best = Double.POSITIVE_INFINITY;
+        int bestParent = -1;
+
+        if (state == goal) {
+            BitSet goalStates = graph.getGoalStates();
+            for (int goalState = goalStates.nextSetBit(0); goalState >= 0;
+                 goalState = goalStates.nextSetBit(goalState + 1)) {
+                if (g[goalState] < best) {
+                    best = g[goalState];
+                    bestParent = goalState;
+                }
+            }
+        } else {
+            for (int i = predecessorOffsets[state]; i < predecessorOffsets[state + 1]; i++) {
+                double cost = g[predecessorStates[i]] + edgeCosts[predecessorEdges[i]];
+                if (cost < best) {
+                    best = cost;
+                    bestParent = predecessorStates[i];
+                }
+            }
+        }
+
+        rhs[state] = best;
+        parents[state] = bestParent;
+    }
+
+    private void updateOpen(int state) {
+        if (g[state] == rhs[state]) {
+            if (open.contains(state)) {
+                open.remove(state);
+            }
+        } else {
+            open.update(state, key1(state), key2(state));
+        }
+    }
+
+    private double key1(int state) {
+        return key2(state) + estimate(state);
+    }
+
+    private double key2(int state) {
+        return Math.min(g[state], rhs[state]);
+    }
+
+    private double estimate(int state) {
+        if (Double.isNaN(estimates[state])) {
+            estimates[state] = heuristic != null ? heuristic.estimate(state) : 0;
+        }
+        return estimates[state];
+    }
+
+    //first edge of the row that enters target, rows are sorted by target
+    private int firstEdge(int source, int target) {
+        int low = graph.getEdgesBegin(source);
+        int high = graph.getEdgesEnd(source);
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (graph.getEdgeTarget(middle) < target) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Indexed binary min-heap ordered by two keys, the second breaking ties of the first,
+     * then by smaller state id. Keys of contained states can move in both directions.
+     */
+    private static class KeyHeap {
+
+        private final int[] heap;
+        private final int[] positions;
+        private final double[] keys1;
+        private final double[] keys2;
+        private int size;
+
+        KeyHeap(int capacity) {
+            this.heap = new int[capacity];
+            this.positions = new int[capacity];
+            this.keys1 = new double[capacity];
+            this.keys2 = new double[capacity];
+            Arrays.fill(positions, -1);
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        boolean contains(int state) {
+            return positions[state] >= 0;
+        }
+
+        int peek() {
+            return heap[0];
+        }
+
+        void insert(int state, double key1, double key2) {
+            keys1[state] = key1;
+            keys2[state] = key2;
+            heap[size] = state;
+            positions[state] = size;
+            size++;
+            siftUp(size - 1);
+        }
+
+        void update(int state, double key1, double key2) {
+            if (!contains(state)) {
+                insert(state, key1, key2);
+                return;
+            }
+            keys1[state] = key1;
+            keys2[state] = key2;
+            siftUp(positions[state]);
+            siftDown(positions[state]);
+        }
+
+        int poll() {
+            int state = heap[0];
+            remove(state);
+            return state;
+        }
+
+        void remove(int state) {
+            int index = positions[state];
+            positions[state] = -1;
+            size--;
+            if (index < size) {
+                heap[index] = heap[size];
+                positions[heap[index]] = index;
+                siftUp(index);
+                siftDown(index);
+            }
+        }
+
+        /**
+         * @return whether the keys of the state are not above the given keys
+         */
+        boolean atMost(int state, double key1, double key2) {
+            return keys1[state] < key1 || (keys1[state] == key1 && keys2[state] <= key2);
+        }
+
+        private boolean less(int state, int other) {
+            return keys1[state] < keys1[other] || (keys1[state] == keys1[other]
+                    && (keys2[state] < keys2[other] || (keys2[state] == keys2[other] && state < other)));
+        }
+
+        private void siftUp(int index) {
+            int state = heap[index];
+            while (index > 0) {
+                int parentIndex = (index - 1) >>> 1;
+                int parent = heap[parentIndex];
+                if (!less(state, parent)) {
+                    break;
+                }
+                heap[index] = parent;
+                positions[parent] = index;
+                index = parentIndex;
+            }
+            heap[index] = state;
+            positions[state] = index;
+        }
+
+        private void siftDown(int index) {
+            int state = heap[index];
+            int half = size >>> 1;
+            while (index < half) {
+                int childIndex = 2 * index + 1;
+                int child = heap[childIndex];
+                if (childIndex + 1 < size && less(heap[childIndex + 1], child)) {
+                    childIndex++;
+                    child = heap[childIndex];
+                }
+                if (!less(child, state)) {
+                    break;
+                }
+                heap[index] = child;
+                positions[child] = index;
+                index = childIndex;
+            }
+            heap[index] = state;
+            positions[state] = index;
+        }
+    }
+
+}
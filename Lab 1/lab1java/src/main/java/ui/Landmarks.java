@@ -0,0 +1,254 @@
+package ui;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Landmark distances for the ALT heuristic (A*, landmarks, triangle inequality).
+ * <p>
+ * For every landmark L the distances d(L, v) and d(v, L) of all states v are stored. By the
+ * triangle inequality both d(L, t) - d(L, v) and d(v, L) - d(t, L) are lower bounds of
+ * d(v, t), and the largest of them over all landmarks is an admissible estimate.
+ * <p>
+ * File layout, little-endian: the magic bytes, a header of version, state count, landmark
+ * count and rounding slack, the landmark ids, then both distance tables as floats, state by
+ * state with the landmarks of one state next to each other. Sections start on an 8 byte
+ * boundary and are memory-mapped on their own.
+ */
+public class Landmarks {
+
+    public static final byte[] MAGIC = {'U', 'I', 'A', 'L'};
+    public static final int VERSION = 1;
+    public static final String PREFIX = "alt:";
+
+    private static final int HEADER_SIZE = 32;
+
+    private final int landmarkCount;
+    private final int[] landmarks;
+    private final FloatBuffer fromLandmarks;
+    private final FloatBuffer toLandmarks;
+    private final double slack;
+
+    private Landmarks(int[] landmarks, FloatBuffer fromLandmarks, FloatBuffer toLandmarks, double slack) {
+        this.landmarkCount = landmarks.length;
+        this.landmarks = landmarks;
+        this.fromLandmarks = fromLandmarks;
+        this.toLandmarks = toLandmarks;
+        this.slack = slack;
+    }
+
+    /**
+     * Picks landmarks by farthest-point selection and writes their distances. The first
+     * landmark is the state farthest from the start state, every next one the state
+     * farthest from all landmarks picked so far. States no landmark reaches count as
+     * farthest, so disconnected parts of the graph get landmarks of their own.
+     *
+     * @param graph state space
+     * @param count number of landmarks, fewer are picked if the graph runs out of states
+     * @param filePath path of the landmark file
+     * @throws IOException if writing the file fails
+     * @throws IllegalArgumentException if the distance tables would not fit into 2 GB each
+     */
+    public static void build(StateGraph graph, int count, String filePath) throws IOException {
+
+        int stateCount = graph.getStateCount();
+        UCS ucs = new UCS();
+
+        BitSet start = new BitSet();
+        start.set(graph.getStartState());
+        double[] nearest = ucs.distancesFrom(graph, start);
+
+        int[] landmarks = new int[Math.min(count, stateCount)];
+
+        //each table is a float array and is mapped in one piece by map
+        int tableSize;
+        try {
+            tableSize = Math.multiplyExact(stateCount, landmarks.length);
+            Math.multiplyExact(tableSize, Float.BYTES);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException(landmarks.length + " landmarks for " + stateCount
+                    + " states do not fit into a landmark table of at most 2 GB, use fewer landmarks");
+        }
+        float[] from = new float[tableSize];
+        float[] to = new float[tableSize];
+        double maxDistance = 0;
+
+        int picked = 0;
+        while (picked < landmarks.length) {
+
+            int landmark = farthest(nearest);
+            if (nearest[landmark] == 0 && picked > 0)
+                break;
+            landmarks[picked] = landmark;
+
+            BitSet source = new BitSet();
+            source.set(landmark);
+            double[] forward = ucs.distancesFrom(graph, source);
+            double[] backward = ucs.distancesFrom(graph.reversed(), source);
+
+            for (int state = 0; state < stateCount; state++) {
+                from[state * landmarks.length + picked] = (float) forward[state];
+                to[state * landmarks.length + picked] = (float) backward[state];
+                if (forward[state] < Double.POSITIVE_INFINITY) {
+                    maxDistance = Math.max(maxDistance, forward[state]);
+                }
+                if (backward[state] < Double.POSITIVE_INFINITY) {
+                    maxDistance = Math.max(maxDistance, backward[state]);
+                }
+                nearest[state] = picked == 0 ? forward[state] : Math.min(nearest[state], forward[state]);
+            }
+            picked++;
+        }
+
+        FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        StateSnapshot.SectionWriter writer = new StateSnapshot.SectionWriter(channel);
+
+        writer.putBytes(MAGIC);
+        writer.putInt(VERSION);
+        writer.putInt(stateCount);
+        writer.putInt(picked);
+        //rounding to float moves each distance by at most half an ulp, a bound subtracts two
+        writer.putDouble(Math.ulp((float) maxDistance));
+        writer.putLong(0);
+
+        for (int i = 0; i < picked; i++) {
+            writer.putInt(landmarks[i]);
+        }
+        writer.align();
+        for (int state = 0; state < stateCount; state++) {
+            for (int i = 0; i < picked; i++) {
+                writer.putFloat(from[state * landmarks.length + i]);
+            }
+        }
+        writer.align();
+        for (int state = 0; state < stateCount; state++) {
+            for (int i = 0; i < picked; i++) {
+                writer.putFloat(to[state * landmarks.length + i]);
+            }
+        }
+
+        writer.flush();
+        channel.close();
+    }
+
+    private static int farthest(double[] distances) {
+        int farthest = 0;
+        for (int state = 1; state < distances.length; state++) {
+            if (distances[state] > distances[farthest]) {
+                farthest = state;
+            }
+        }
+        return farthest;
+    }
+
+    /**
+     * Memory-maps a landmark file written by {@link #build}.
+     *
+     * @param filePath path of the landmark file
+     * @param graph state space the landmarks were built for
+     * @return mapped landmark distances
+     * @throws IOException if the file is not a landmark file for this state space
+     */
+    public static Landmarks map(String filePath, StateGraph graph) throws IOException {
+
+        FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ);
+
+        ByteBuffer header = StateSnapshot.map(channel, 0, HEADER_SIZE);
+        for (byte expected : MAGIC) {
+            if (header.get() != expected) {
+                channel.close();
+                throw new IOException(filePath + " is not a landmark file");
+            }
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            channel.close();
+            throw new IOException(filePath + " has landmark file version " + version + ", expected " + VERSION);
+        }
+        int stateCount = header.getInt();
+        if (stateCount != graph.getStateCount()) {
+            channel.close();
+            throw new IOException(filePath + " has " + stateCount + " states, the state space has "
+                    + graph.getStateCount());
+        }
+        int landmarkCount = header.getInt();
+        double slack = header.getDouble();
+
+        long position = HEADER_SIZE;
+        int[] landmarks = new int[landmarkCount];
+        StateSnapshot.map(channel, position, 4L * landmarkCount).asIntBuffer().get(landmarks);
+        position = StateSnapshot.align(position + 4L * landmarkCount);
+        long tableSize = 4L * stateCount * landmarkCount;
+        FloatBuffer from = StateSnapshot.map(channel, position, tableSize).asFloatBuffer();
+        position = StateSnapshot.align(position + tableSize);
+        FloatBuffer to = StateSnapshot.map(channel, position, tableSize).asFloatBuffer();
+        channel.close();
+
+        return new Landmarks(landmarks, from, to, slack);
+    }
+
+    public int[] getLandmarks() {
+        return landmarks.clone();
+    }
+
+    /**
+     * Builds the heuristic towards a set of goal states, the smallest of the bounds towards
+     * every single goal. A state is estimated at infinity when the distances prove that it
+     * cannot reach any goal.
+     *
+     * @param goalStates goal states
+     * @return ALT heuristic
+     */
+    public Heuristic towards(BitSet goalStates) {
+
+        int goalCount = goalStates.cardinality();
+        double[] goalFrom = new double[goalCount * landmarkCount];
+        double[] goalTo = new double[goalCount * landmarkCount];
+        int goal = goalStates.nextSetBit(0);
+        for (int g = 0; g < goalCount; g++, goal = goalStates.nextSetBit(goal + 1)) {
+            for (int i = 0; i < landmarkCount; i++) {
+                goalFrom[g * landmarkCount + i] = fromLandmarks.get(goal * landmarkCount + i);
+                goalTo[g * landmarkCount + i] = toLandmarks.get(goal * landmarkCount + i);
+            }
+        }
+
+        return state -> {
+            int base = (int) state * landmarkCount;
+            double estimate = Double.POSITIVE_INFINITY;
+
+            for (int g = 0; g < goalCount && estimate > 0; g++) {
+                double bound = 0;
+                for (int i = 0; i < landmarkCount; i++) {
+                    double fromState = fromLandmarks.get(base + i);
+                    double fromGoal = goalFrom[g * landmarkCount + i];
+                    double toState = toLandmarks.get(base + i);
+                    double toGoal = goalTo[g * landmarkCount + i];
+
+                    //the landmark reaches the state but not the goal, or the goal reaches
+                    //the landmark but the state does not: the state cannot reach the goal
+                    if ((fromGoal == Double.POSITIVE_INFINITY && fromState < Double.POSITIVE_INFINITY)
+                            || (toState == Double.POSITIVE_INFINITY && toGoal < Double.POSITIVE_INFINITY)) {
+                        bound = Double.POSITIVE_INFINITY;
+                        break;
+                    }
+                    if (fromState < Double.POSITIVE_INFINITY) {
+                        bound = Math.max(bound, fromGoal - fromState - slack);
+                    }
+                    if (toGoal < Double.POSITIVE_INFINITY) {
+                        bound = Math.max(bound, toState - toGoal - slack);
+                    }
+                }
+                estimate = Math.min(estimate, bound);
+            }
+
+            return estimate;
+        };
+    }
+
+}
@@ -0,0 +1,61 @@
+package ui;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Unbounded lock-free queue for many producers and a single consumer.
+ * <p>
+ * Producers swap themselves in as the new head with one atomic exchange and then link the
+ * previous head to it, the consumer follows the links from a stub node. Between those two
+ * steps a pushed element is briefly invisible to the consumer, so emptiness is only a hint.
+ */
+public class MpscQueue<E> {
+
+    private static class Node<E> {
+        private E value;
+        private volatile Node<E> next;
+
+        public Node(E value) {
+            this.value = value;
+        }
+    }
+
+    private final AtomicReference<Node<E>> head;
+    private Node<E> tail;
+
+    public MpscQueue() {
+        Node<E> stub = new Node<>(null);
+        this.head = new AtomicReference<>(stub);
+        this.tail = stub;
+    }
+
+    /**
+     * Adds an element. Safe to call from any thread.
+     */
+    public void offer(E value) {
+        Node<E> node = new Node<>(value);
+        Node<E> previous = head.getAndSet(node);
+        previous.next = node;
+    }
+
+    /**
+     * Removes the oldest element. Must only be called from the consumer thread.
+     *
+     * @return oldest element, or null if no element is visible yet
+     */
+    public E poll() {
+        Node<E> next = tail.next;
+        if (next == null) {
+            return null;
+        }
+        E value = next.value;
+        next.value = null;
+        tail = next;
+        return value;
+    }
+
+    public boolean isEmpty() {
+        return tail.next == null;
+    }
+
+}
@@ -0,0 +1,23 @@
+package ui;
+
+/**
+ * Open list of a best-first search over dense state ids or slots. The state with the
+ * smallest key comes first, equal keys by smaller state id, which is the alphabetical
+ * tie-breaking of the searches.
+ */
+public interface OpenList {
+
+    boolean isEmpty();
+
+    boolean contains(int state);
+
+    void insert(int state, double key);
+
+    /**
+     * Lowers the key of a state already in the open list.
+     */
+    void decreaseKey(int state, double key);
+
+    int poll();
+
+}
@@ -0,0 +1,245 @@
+package ui;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hash-distributed A* (HDA*). Every state is owned by the worker its hashed id maps to.
+ * A worker keeps the open list of its own states and sends generated successors that
+ * belong to other workers through their lock-free inboxes.
+ * <p>
+ * Costs and parents live in shared arrays, but every entry is only written by the owner
+ * of its state. The search ends when no worker has an open state with f below the best
+ * solution found so far and no message is in flight. That is tracked by one counter of
+ * active workers plus unprocessed messages: a message is counted before it is sent and
+ * released after it is handled, and a worker counts itself active again before handling a
+ * message, so the counter only reaches zero once no more work can appear. At that point
+ * the best solution is optimal for an admissible heuristic.
+ */
+public class ParallelASTAR {
+
+    private static class Message {
+        private final int state;
+        private final double cost;
+        private final int parent;
+
+        public Message(int state, double cost, int parent) {
+            this.state = state;
+            this.cost = cost;
+            this.parent = parent;
+        }
+    }
+
+    private static class Entry implements Comparable<Entry> {
+        private final int state;
+        private final double cost;
+        private final double estimate;
+
+        public Entry(int state, double cost, double estimate) {
+            this.state = state;
+            this.cost = cost;
+            this.estimate = estimate;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            if (this.estimate == other.estimate) {
+                return Integer.compare(this.state, other.state);
+            } else {
+                return Double.compare(this.estimate, other.estimate);
+            }
+        }
+    }
+
+    private final int threads;
+    private StateGraph graph;
+    private BitSet goalStates;
+    private Heuristic heuristic;
+    private double[] costs;
+    private int[] parents;
+    private List<MpscQueue<Message>> inboxes;
+    private AtomicLong pending;
+    private volatile boolean done;
+    private volatile Throwable failure;
+    private volatile double bestCost;
+    private int bestGoalState;
+    private long[] expansionsPerWorker;
+
+    public ParallelASTAR(int threads) {
+        this.threads = threads;
+    }
+
+    public void runAlgorithm(String filePathStateSpace, String filePathHeuristics) throws IOException {
+
+        StateGraph graph = StateGraph.load(filePathStateSpace);
+
+        //without a heuristic file, use the heuristic column of a snapshot
+        Heuristic heuristic = filePathHeuristics != null ? graph.openHeuristics(filePathHeuristics) : graph.getHeuristics();
+        String heuristicName = filePathHeuristics != null ? filePathHeuristics : filePathStateSpace;
+
+        SearchResult result = search(graph, graph.getStartState(), graph.getGoalStates(), heuristic);
+        System.out.println(result.format("# HDA-STAR " + heuristicName, graph));
+    }
+
+    /**
+     * @throws IllegalArgumentException if there is no heuristic
+     */
+    public SearchResult search(StateGraph graph, int startState, BitSet goalStates, Heuristic heuristic) {
+
+        if (heuristic == null) {
+            throw new IllegalArgumentException("HDA* needs a heuristic, give --h or a snapshot with a heuristic column");
+        }
+
+        this.graph = graph;
+        this.goalStates = goalStates;
+        this.heuristic = heuristic;
+        this.costs = new double[graph.getStateCount()];
+        this.parents = new int[graph.getStateCount()];
+        this.inboxes = new ArrayList<>();
+        this.pending = new AtomicLong(threads);
+        this.done = false;
+        this.failure = null;
+        this.bestCost = Double.POSITIVE_INFINITY;
+        this.bestGoalState = -1;
+        this.expansionsPerWorker = new long[threads];
+        Arrays.fill(costs, Double.POSITIVE_INFINITY);
+
+        for (int worker = 0; worker < threads; worker++) {
+            inboxes.add(new MpscQueue<>());
+        }
+        //handed to the owner like any other successor, so it needs to be counted as in flight
+        pending.incrementAndGet();
+        inboxes.get(ownerOf(startState)).offer(new Message(startState, 0, startState));
+
+        Thread[] workers = new Thread[threads];
+        for (int worker = 0; worker < threads; worker++) {
+            int id = worker;
+            workers[worker] = new Thread(() -> {
+                try {
+                    work(id);
+                } catch (Throwable e) {
+                    fail(e);
+                }
+            }, "hdastar-" + worker);
+            workers[worker].start();
+        }
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for search workers", e);
+            }
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        } else if (failure != null) {
+            throw new IllegalStateException(failure);
+        }
+
+        int statesVisited = (int) Arrays.stream(expansionsPerWorker).sum();
+        StringJoiner expansions = new StringJoiner(" ");
+        for (long workerExpansions : expansionsPerWorker) {
+            expansions.add(Long.toString(workerExpansions));
+        }
+
+        SearchResult result = bestGoalState < 0 ? SearchResult.notFound(statesVisited)
+                : SearchResult.found(statesVisited, costs[bestGoalState], parents, startState, bestGoalState);
+        return result.addDetail("EXPANSIONS_PER_WORKER", expansions);
+    }
+
+    private void work(int id) {
+
+        PriorityQueue<Entry> open = new PriorityQueue<>();
+        MpscQueue<Message> inbox = inboxes.get(id);
+        long expansions = 0;
+        boolean active = true;
+
+        //done is also set when another worker failed, which may leave work behind
+        while (!done) {
+
+            Message message = inbox.poll();
+            while (message != null) {
+                if (!active) {
+                    pending.incrementAndGet();
+                    active = true;
+                }
+                relax(message.state, message.cost, message.parent, open);
+                pending.decrementAndGet();
+                message = inbox.poll();
+            }
+
+            Entry entry = open.peek();
+            if (entry != null && entry.estimate < bestCost) {
+                open.poll();
+                if (entry.cost > costs[entry.state])
+                    continue;
+                expansions++;
+
+                if (goalStates.get(entry.state)) {
+                    offerSolution(entry.state, entry.cost);
+                    continue;
+                }
+
+                for (int edge = graph.getEdgesBegin(entry.state); edge < graph.getEdgesEnd(entry.state); edge++) {
+                    int neighbour = graph.getEdgeTarget(edge);
+                    double cost = entry.cost + graph.getEdgeCost(edge);
+                    int owner = ownerOf(neighbour);
+
+                    if (owner == id) {
+                        relax(neighbour, cost, entry.state, open);
+                    } else if (cost + heuristic.estimate(neighbour) < bestCost) {
+                        pending.incrementAndGet();
+                        inboxes.get(owner).offer(new Message(neighbour, cost, entry.state));
+                    }
+                }
+                continue;
+            }
+
+            if (active) {
+                active = false;
+                if (pending.decrementAndGet() == 0) {
+                    done = true;
+                }
+            }
+            if (done) {
+                break;
+            }
+            LockSupport.parkNanos(10_000);
+        }
+
+        expansionsPerWorker[id] = expansions;
+    }
+
+    //the first failure wins, the other workers stop at their next round
+    private synchronized void fail(Throwable e) {
+        if (failure == null) {
+            failure = e;
+        }
+        done = true;
+    }
+
+    private void relax(int state, double cost, int parent, PriorityQueue<Entry> open) {
+        if (cost < costs[state]) {
+            costs[state] = cost;
+            parents[state] = parent;
+            open.add(new Entry(state, cost, cost + heuristic.estimate(state)));
+        }
+    }
+
+    private synchronized void offerSolution(int goalState, double cost) {
+        if (cost < bestCost) {
+            bestCost = cost;
+            bestGoalState = goalState;
+        }
+    }
+
+    private int ownerOf(int state) {
+        return Integer.remainderUnsigned(state * 0x9E3779B9, threads);
+    }
+
+}
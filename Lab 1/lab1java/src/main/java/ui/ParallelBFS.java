@@ -0,0 +1,242 @@
+package ui;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Parallel level-synchronous breadth first search with direction optimization.
+ * <p>
+ * Every level is expanded on a fork/join pool. While the frontier is small, its edges are
+ * followed forward (top-down) and states are claimed with a compare-and-set on the visited
+ * bits. Once the frontier edges outnumber the unvisited edges by far, every unvisited state
+ * instead looks for a predecessor in the frontier over the reversed edges (bottom-up),
+ * until the frontier shrinks again.
+ * <p>
+ * The result is the same as that of {@link BFS}: a state takes as its parent the first
+ * state of the previous level that reaches it, and the next level is put into the order
+ * in which the sequential search would have generated it. The goal is reported as soon as
+ * a level containing one is complete, with the states the sequential search would have
+ * expanded before it as the visited count.
+ */
+public class ParallelBFS {
+
+    //switch to bottom-up when the frontier has more than 1/ALPHA of the unvisited edges,
+    //and back to top-down when it has fewer than 1/BETA of the states
+    private static final int ALPHA = 14;
+    private static final int BETA = 24;
+    private static final int GRAIN = 1024;
+
+    private interface RangeBody {
+        void run(int begin, int end);
+    }
+
+    private static class RangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int begin;
+        private final int end;
+        private final RangeBody body;
+
+        public RangeTask(int begin, int end, RangeBody body) {
+            this.begin = begin;
+            this.end = end;
+            this.body = body;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - begin <= GRAIN) {
+                body.run(begin, end);
+            } else {
+                int middle = (begin + end) >>> 1;
+                invokeAll(new RangeTask(begin, middle, body), new RangeTask(middle, end, body));
+            }
+        }
+    }
+
+    private final int threads;
+
+    public ParallelBFS(int threads) {
+        this.threads = threads;
+    }
+
+    public void runAlgorithm(String filePath) throws IOException {
+
+        StateGraph graph = StateGraph.load(filePath);
+        SearchResult result = search(graph, graph.getStartState(), graph.getGoalStates());
+        System.out.println(result.format("# BFS", graph));
+    }
+
+    public SearchResult search(StateGraph graph, int startState, BitSet goalStates) {
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return search(pool, graph, startState, goalStates);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private SearchResult search(ForkJoinPool pool, StateGraph graph, int startState, BitSet goalStates) {
+
+        int stateCount = graph.getStateCount();
+        StateGraph reversed = graph.reversed();
+
+        int[] parents = new int[stateCount];
+        double[] costs = new double[stateCount];
+        int[] positions = new int[stateCount];
+        AtomicLongArray visited = new AtomicLongArray((stateCount + 63) >>> 6);
+        long[] inFrontier = new long[(stateCount + 63) >>> 6];
+
+        int[] frontier = {startState};
+        claim(visited, startState);
+        long statesBefore = 0;
+        long unvisitedEdges = graph.getEdgeCount();
+        boolean bottomUp = false;
+
+        while (frontier.length > 0) {
+
+            //the sequential search expands this level in order, up to the first goal
+            for (int i = 0; i < frontier.length; i++) {
+                if (goalStates.get(frontier[i])) {
+                    return SearchResult.found((int) (statesBefore + i), costs[frontier[i]], parents, startState,
+                            frontier[i]);
+                }
+            }
+
+            int[] current = frontier;
+            long frontierEdges = 0;
+            for (int i = 0; i < current.length; i++) {
+                positions[current[i]] = i;
+                inFrontier[current[i] >>> 6] |= 1L << current[i];
+                frontierEdges += graph.getEdgesEnd(current[i]) - graph.getEdgesBegin(current[i]);
+            }
+            unvisitedEdges -= frontierEdges;
+
+            if (!bottomUp && frontierEdges > unvisitedEdges / ALPHA) {
+                bottomUp = true;
+            } else if (bottomUp && current.length < stateCount / BETA) {
+                bottomUp = false;
+            }
+
+            ConcurrentLinkedQueue<int[]> discovered = new ConcurrentLinkedQueue<>();
+            if (bottomUp) {
+                pool.invoke(new RangeTask(0, stateCount, (begin, end) -> {
+                    IntList found = new IntList();
+                    for (int state = begin; state < end; state++) {
+                        if (isSet(visited, state))
+                            continue;
+                        for (int edge = reversed.getEdgesBegin(state); edge < reversed.getEdgesEnd(state); edge++) {
+                            if (isSet(inFrontier, reversed.getEdgeTarget(edge))) {
+                                claim(visited, state);
+                                found.add(state);
+                                break;
+                            }
+                        }
+                    }
+                    discovered.add(found.toArray());
+                }));
+            } else {
+                pool.invoke(new RangeTask(0, current.length, (begin, end) -> {
+                    IntList found = new IntList();
+                    for (int i = begin; i < end; i++) {
+                        for (int edge = graph.getEdgesBegin(current[i]); edge < graph.getEdgesEnd(current[i]); edge++) {
+                            int neighbour = graph.getEdgeTarget(edge);
+                            if (claim(visited, neighbour)) {
+                                found.add(neighbour);
+                            }
+                        }
+                    }
+                    discovered.add(found.toArray());
+                }));
+            }
+
+            int nextSize = 0;
+            for (int[] part : discovered) {
+                nextSize += part.length;
+            }
+            int[] next = new int[nextSize];
+            nextSize = 0;
+            for (int[] part : discovered) {
+                System.arraycopy(part, 0, next, nextSize, part.length);
+                nextSize += part.length;
+            }
+
+            //pick the parent the sequential search would have used, the first reaching state
+            //of the level, and order the level by (position of parent, id) like it does
+            long[] orderKeys = new long[next.length];
+            pool.invoke(new RangeTask(0, next.length, (begin, end) -> {
+                for (int i = begin; i < end; i++) {
+                    int state = next[i];
+                    int parentEdge = -1;
+                    for (int edge = reversed.getEdgesBegin(state); edge < reversed.getEdgesEnd(state); edge++) {
+                        int predecessor = reversed.getEdgeTarget(edge);
+                        if (isSet(inFrontier, predecessor) && (parentEdge < 0
+                                || positions[predecessor] < positions[reversed.getEdgeTarget(parentEdge)])) {
+                            parentEdge = edge;
+                        }
+                    }
+                    int parent = reversed.getEdgeTarget(parentEdge);
+                    parents[state] = parent;
+                    costs[state] = costs[parent] + reversed.getEdgeCost(parentEdge);
+                    orderKeys[i] = ((long) positions[parent] << 32) | state;
+                }
+            }));
+            Arrays.parallelSort(orderKeys);
+
+            frontier = new int[orderKeys.length];
+            for (int i = 0; i < orderKeys.length; i++) {
+                frontier[i] = (int) orderKeys[i];
+            }
+            statesBefore += current.length;
+            for (int state : current) {
+                inFrontier[state >>> 6] = 0;
+            }
+        }
+
+        return SearchResult.notFound((int) statesBefore - 1);
+    }
+
+    private static boolean claim(AtomicLongArray bits, int state) {
+        int word = state >>> 6;
+        long mask = 1L << state;
+        while (true) {
+            long old = bits.get(word);
+            if ((old & mask) != 0) {
+                return false;
+            }
+            if (bits.compareAndSet(word, old, old | mask)) {
+                return true;
+            }
+        }
+    }
+
+    private static boolean isSet(AtomicLongArray bits, int state) {
+        return (bits.get(state >>> 6) & (1L << state)) != 0;
+    }
+
+    private static boolean isSet(long[] bits, int state) {
+        return (bits[state >>> 6] & (1L << state)) != 0;
+    }
+
+    private static class IntList {
+        private int[] values = new int[16];
+        private int size;
+
+        public void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        public int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+}
@@ -0,0 +1,463 @@
+package ui;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Parser of the state space text format that cuts the file at line boundaries into chunks,
+ * which are mapped and scanned on a thread pool. A chunk scans its bytes directly, interns
+ * the names it meets into its own table and parses the costs digit by digit, so no String
+ * is made for a line, a name or a cost.
+ * <p>
+ * The chunk tables are then merged into one in chunk order, the edges of every chunk are
+ * renumbered in parallel and {@link StateGraph#build} turns them into rows. Edges keep
+ * their order in the file, so the graph is the same as the one of a sequential parse.
+ */
+public class ParallelParser {
+
+    private static final int MIN_CHUNK_BYTES = 1 << 20;
+    private static final int MAX_CHUNK_BYTES = 1 << 26;
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    //doubles that are exact, so a mantissa below 10^15 divided by one of them is rounded once
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final int MAX_EXACT_DIGITS = 15;
+
+    private final int threads;
+
+    /**
+     * @param threads number of chunks scanned at the same time
+     */
+    public ParallelParser(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Names seen by a chunk or by the whole file, with the bytes of every name copied once
+     * into one array and an open addressing table from the bytes to the id of the name.
+     */
+    private static class NameTable {
+        private byte[] bytes = new byte[1024];
+        private int byteCount;
+        private int[] offsets = new int[16];
+        private int[] lengths = new int[16];
+        private int[] hashes = new int[16];
+        private int[] slots = new int[64];
+        private int size;
+
+        int intern(byte[] source, int offset, int length, int hash) {
+
+            int mask = slots.length - 1;
+            int slot = hash & mask;
+            while (slots[slot] != 0) {
+                int id = slots[slot] - 1;
+                if (hashes[id] == hash && lengths[id] == length
+                        && Arrays.equals(bytes, offsets[id], offsets[id] + length, source, offset, offset + length)) {
+                    return id;
+                }
+                slot = (slot + 1) & mask;
+            }
+
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size * 2);
+                lengths = Arrays.copyOf(lengths, size * 2);
+                hashes = Arrays.copyOf(hashes, size * 2);
+            }
+            if (byteCount + length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(byteCount + length, bytes.length * 2));
+            }
+            int id = size++;
+            System.arraycopy(source, offset, bytes, byteCount, length);
+            offsets[id] = byteCount;
+            lengths[id] = length;
+            hashes[id] = hash;
+            byteCount += length;
+            slots[slot] = id + 1;
+
+            //keep the table at most half full
+            if (2 * size > slots.length) {
+                rehash();
+            }
+            return id;
+        }
+
+        int intern(NameTable names, int id) {
+            return intern(names.bytes, names.offsets[id], names.lengths[id], names.hashes[id]);
+        }
+
+        private void rehash() {
+            slots = new int[slots.length * 2];
+            int mask = slots.length - 1;
+            for (int id = 0; id < size; id++) {
+                int slot = hashes[id] & mask;
+                while (slots[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = id + 1;
+            }
+        }
+
+        byte[] getBytes(int id) {
+            return Arrays.copyOfRange(bytes, offsets[id], offsets[id] + lengths[id]);
+        }
+    }
+
+    /**
+     * Names and edges of one chunk, the edges against the ids of the chunk table until
+     * they are renumbered.
+     */
+    private static class Chunk {
+        private final NameTable names = new NameTable();
+        private int[] sources = new int[1024];
+        private int[] targets = new int[1024];
+        private double[] costs = new double[1024];
+        private int edgeCount;
+
+        void addEdge(int source, int target, double cost) {
+            if (edgeCount == sources.length) {
+                sources = Arrays.copyOf(sources, edgeCount * 2);
+                targets = Arrays.copyOf(targets, edgeCount * 2);
+                costs = Arrays.copyOf(costs, edgeCount * 2);
+            }
+            sources[edgeCount] = source;
+            targets[edgeCount] = target;
+            costs[edgeCount] = cost;
+            edgeCount++;
+        }
+    }
+
+    /**
+     * Parses a state space file.
+     *
+     * @param filePath path to the state space file
+     * @return loaded graph
+     * @throws IOException if reading the file fails
+     */
+    public StateGraph parse(String filePath) throws IOException {
+
+        FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ);
+        try {
+            long fileSize = channel.size();
+
+            //the start and goal lines come first, after any comments
+            int windowSize = (int) Math.min(fileSize, MIN_CHUNK_BYTES);
+            byte[] header = read(channel, 0, windowSize);
+            int[] startLine = nextDataLine(header, 0, windowSize);
+            int[] goalLine = startLine != null ? nextDataLine(header, startLine[2], windowSize) : null;
+            //the goal line may run past the window
+            while ((goalLine == null || header[goalLine[2] - 1] != '\n') && windowSize < fileSize) {
+                windowSize = (int) Math.min(fileSize, Math.min(Integer.MAX_VALUE - 8, 2L * windowSize));
+                header = read(channel, 0, windowSize);
+                startLine = nextDataLine(header, 0, windowSize);
+                goalLine = startLine != null ? nextDataLine(header, startLine[2], windowSize) : null;
+            }
+            if (goalLine == null) {
+                throw new IOException(filePath + ": missing start or goal states");
+            }
+
+            NameTable names = new NameTable();
+            int startState = names.intern(header, startLine[0], startLine[1] - startLine[0],
+                    hash(header, startLine[0], startLine[1]));
+            ArrayList<Integer> goalStates = new ArrayList<>();
+            int begin = goalLine[0];
+            for (int i = goalLine[0]; i <= goalLine[1]; i++) {
+                if (i == goalLine[1] || header[i] == ' ') {
+                    goalStates.add(names.intern(header, begin, i - begin, hash(header, begin, i)));
+                    begin = i + 1;
+                }
+            }
+
+            Chunk[] chunks = scanChunks(channel, goalLine[2], fileSize);
+
+            //merge in chunk order, then every chunk renumbers its own edges
+            int[][] globalIds = new int[chunks.length][];
+            int edgeCount = 0;
+            for (int c = 0; c < chunks.length; c++) {
+                NameTable chunkNames = chunks[c].names;
+                globalIds[c] = new int[chunkNames.size];
+                for (int id = 0; id < chunkNames.size; id++) {
+                    globalIds[c][id] = names.intern(chunkNames, id);
+                }
+                edgeCount += chunks[c].edgeCount;
+            }
+
+            int[] sources = new int[edgeCount];
+            int[] targets = new int[edgeCount];
+            double[] costs = new double[edgeCount];
+            ArrayList<Callable<Void>> tasks = new ArrayList<>();
+            int firstEdge = 0;
+            for (int c = 0; c < chunks.length; c++) {
+                Chunk chunk = chunks[c];
+                int[] ids = globalIds[c];
+                int chunkFirstEdge = firstEdge;
+                tasks.add(() -> {
+                    for (int i = 0; i < chunk.edgeCount; i++) {
+                        sources[chunkFirstEdge + i] = ids[chunk.sources[i]];
+                        targets[chunkFirstEdge + i] = ids[chunk.targets[i]];
+                    }
+                    System.arraycopy(chunk.costs, 0, costs, chunkFirstEdge, chunk.edgeCount);
+                    return null;
+                });
+                firstEdge += chunk.edgeCount;
+            }
+            runAll(tasks);
+
+            byte[][] encodedNames = new byte[names.size][];
+            for (int id = 0; id < names.size; id++) {
+                encodedNames[id] = names.getBytes(id);
+            }
+            return StateGraph.build(encodedNames, sources, targets, costs, edgeCount, startState,
+                    goalStates.stream().mapToInt(Integer::intValue).toArray());
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Cuts the body of the file into chunks that end at a line break and scans them, a
+     * few chunks per thread.
+     */
+    private Chunk[] scanChunks(FileChannel channel, long bodyStart, long fileSize) throws IOException {
+
+        long bodySize = fileSize - bodyStart;
+        long chunkSize = Math.max(MIN_CHUNK_BYTES,
+                Math.min(MAX_CHUNK_BYTES, bodySize / ((long) threads * CHUNKS_PER_THREAD) + 1));
+
+        ArrayList<Long> cuts = new ArrayList<>();
+        cuts.add(bodyStart);
+        long position = bodyStart + chunkSize;
+        while (position < fileSize) {
+            long cut = nextLineStart(channel, position, fileSize);
+            if (cut < fileSize) {
+                cuts.add(cut);
+            }
+            position = cut + chunkSize;
+        }
+        cuts.add(fileSize);
+
+        Chunk[] chunks = new Chunk[cuts.size() - 1];
+        ArrayList<Callable<Void>> tasks = new ArrayList<>();
+        for (int c = 0; c < chunks.length; c++) {
+            int index = c;
+            long begin = cuts.get(c);
+            long end = cuts.get(c + 1);
+            tasks.add(() -> {
+                chunks[index] = scan(read(channel, begin, (int) (end - begin)));
+                return null;
+            });
+        }
+        runAll(tasks);
+        return chunks;
+    }
+
+    /**
+     * Maps a range of the file and copies it to the heap, where the scan runs over a plain
+     * array instead of through the buffer.
+     */
+    private static byte[] read(FileChannel channel, long position, int size) throws IOException {
+        byte[] bytes = new byte[size];
+        channel.map(FileChannel.MapMode.READ_ONLY, position, size).get(bytes);
+        return bytes;
+    }
+
+    private static long nextLineStart(FileChannel channel, long position, long fileSize) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(4096);
+        while (position < fileSize) {
+            block.clear();
+            int read = channel.read(block, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (block.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return fileSize;
+    }
+
+    /**
+     * Scans the lines of a chunk. A line is "state: target,cost target,cost ...", with the
+     * list and the colon allowed to be missing.
+     */
+    private static Chunk scan(byte[] bytes) {
+
+        Chunk chunk = new Chunk();
+        int end = bytes.length;
+        int[] line = nextDataLine(bytes, 0, end);
+
+        while (line != null) {
+            int begin = line[0];
+            int lineEnd = line[1];
+
+            int separator = -1;
+            for (int i = begin; i + 1 < lineEnd; i++) {
+                if (bytes[i] == ':' && bytes[i + 1] == ' ') {
+                    separator = i;
+                    break;
+                }
+            }
+            int nameEnd = separator >= 0 ? separator : bytes[lineEnd - 1] == ':' ? lineEnd - 1 : lineEnd;
+            int source = chunk.names.intern(bytes, begin, nameEnd - begin, hash(bytes, begin, nameEnd));
+
+            if (separator >= 0) {
+                int token = separator + 2;
+                while (token < lineEnd) {
+                    if (bytes[token] == ' ') {
+                        token++;
+                        continue;
+                    }
+                    int tokenEnd = token;
+                    int comma = -1;
+                    while (tokenEnd < lineEnd && bytes[tokenEnd] != ' ') {
+                        if (bytes[tokenEnd] == ',') {
+                            comma = tokenEnd;
+                        }
+                        tokenEnd++;
+                    }
+                    if (comma < 0) {
+                        throw new IllegalArgumentException("edge without a cost: "
+                                + new String(bytes, token, tokenEnd - token, StandardCharsets.UTF_8));
+                    }
+                    int target = chunk.names.intern(bytes, token, comma - token, hash(bytes, token, comma));
+                    chunk.addEdge(source, target, parseCost(bytes, comma + 1, tokenEnd));
+                    token = tokenEnd;
+                }
+            }
+
+            line = nextDataLine(bytes, line[2], end);
+        }
+        return chunk;
+    }
+
+    /**
+     * Finds the next line that is neither blank nor a comment.
+     *
+     * @return begin and end of the trimmed line and the start of the line after it, or
+     *         null if there is none before end
+     */
+    private static int[] nextDataLine(byte[] bytes, int position, int end) {
+
+        while (position < end) {
+            int lineEnd = position;
+            while (lineEnd < end && bytes[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            int next = Math.min(end, lineEnd + 1);
+
+            int begin = position;
+            while (begin < lineEnd && (bytes[begin] & 0xFF) <= ' ') {
+                begin++;
+            }
+            int trimmedEnd = lineEnd;
+            while (trimmedEnd > begin && (bytes[trimmedEnd - 1] & 0xFF) <= ' ') {
+                trimmedEnd--;
+            }
+
+            if (begin < trimmedEnd && bytes[position] != '#') {
+                return new int[]{begin, trimmedEnd, next};
+            }
+            position = next;
+        }
+        return null;
+    }
+
+    /**
+     * Same value as Double.parseDouble. Plain decimals of at most 15 digits, the usual
+     * costs, are a single exact division; anything else goes to Double.parseDouble.
+     */
+    private static double parseCost(byte[] bytes, int begin, int end) {
+
+        int i = begin;
+        boolean negative = i < end && bytes[i] == '-';
+        if (negative) {
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = -1;
+        for (; i < end; i++) {
+            byte b = bytes[i];
+            if (b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (fractionDigits >= 0) {
+                    fractionDigits++;
+                }
+            } else if (b == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else {
+                break;
+            }
+        }
+
+        if (i == end && digits > 0 && digits <= MAX_EXACT_DIGITS) {
+            double value = fractionDigits > 0 ? mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+            return negative ? -value : value;
+        }
+        return Double.parseDouble(new String(bytes, begin, end - begin, StandardCharsets.US_ASCII));
+    }
+
+    private static int hash(byte[] bytes, int begin, int end) {
+        int hash = 0x811C9DC5;
+        for (int i = begin; i < end; i++) {
+            hash = (hash ^ bytes[i]) * 0x01000193;
+        }
+        //spread the high bits into the slot index
+        return hash ^ (hash >>> 16);
+    }
+
+    private void runAll(List<Callable<Void>> tasks) throws IOException {
+
+        if (tasks.size() == 1 || threads == 1) {
+            try {
+                for (Callable<Void> task : tasks) {
+                    task.call();
+                }
+            } catch (IOException | RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            return;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, tasks.size()));
+        try {
+            for (Future<Void> task : pool.invokeAll(tasks)) {
+                task.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while parsing", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,427 @@
+package ui;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Pattern database heuristic for the sliding puzzle.
+ * <p>
+ * The puzzle is abstracted to the cells of a few pattern tiles, the other tiles become
+ * indistinguishable. The exact distance of every abstract state to the abstract goal is
+ * computed once by a breadth first search from the goal, which is also the backward
+ * search since every move can be undone. Distances are stored as one byte per placement
+ * of the pattern tiles, indexed by the rank of the placement as a partial permutation,
+ * so a lookup is one rank and one read of the memory-mapped table.
+ * <p>
+ * In an additive database only moves of pattern tiles count, so the values of databases
+ * with disjoint patterns can be added. Otherwise all moves count and databases can only
+ * be combined by taking the maximum.
+ * <p>
+ * File layout, little-endian: the magic bytes, a header of version, rows, columns, pattern
+ * size, flags and goal state, then the pattern tiles and, on an 8 byte boundary, the
+ * distance table.
+ */
+public class PatternDatabase implements Heuristic {
+
+    public static final byte[] MAGIC = {'U', 'I', 'P', 'D'};
+    public static final int VERSION = 1;
+    public static final String PREFIX = "pdb:";
+
+    private static final int HEADER_SIZE = 32;
+    private static final int FLAG_ADDITIVE = 1;
+    private static final int UNREACHED = 0xFF;
+
+    private final int cells;
+    private final int[] pattern;
+    private final int[] patternIndex;
+    private final boolean additive;
+    private final ByteBuffer distances;
+
+    private PatternDatabase(int cells, int[] pattern, boolean additive, ByteBuffer distances) {
+        this.cells = cells;
+        this.pattern = pattern;
+        this.additive = additive;
+        this.distances = distances;
+        this.patternIndex = new int[16];
+        Arrays.fill(patternIndex, -1);
+        for (int i = 0; i < pattern.length; i++) {
+            patternIndex[pattern[i]] = i;
+        }
+    }
+
+    /**
+     * Computes the abstract distances and writes the database. The search runs over the
+     * placements of the pattern tiles and the blank, with a 0-1 breadth first search when
+     * blank moves are free, and keeps the smallest distance over all blank cells.
+     *
+     * @param puzzle puzzle whose goal state the distances lead to
+     * @param pattern pattern tiles, neither the blank nor repeated
+     * @param additive whether only moves of pattern tiles count
+     * @param filePath path of the database file
+     * @throws IOException if writing the file fails
+     */
+    public static void build(SlidingPuzzle puzzle, int[] pattern, boolean additive, String filePath)
+            throws IOException {
+
+        int cells = puzzle.getRows() * puzzle.getColumns();
+        int columns = puzzle.getColumns();
+        checkPattern(pattern, cells);
+
+        long searchSize = placements(cells, pattern.length + 1);
+        if (searchSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Pattern of " + pattern.length + " tiles has " + searchSize
+                    + " abstract states, too many for one table");
+        }
+
+        int[] goalCells = new int[16];
+        for (int cell = 0; cell < cells; cell++) {
+            goalCells[SlidingPuzzle.tile(puzzle.getGoalState(), cell)] = cell;
+        }
+
+        //the blank is the last element of a placement, so the blank cell is the lowest digit of the rank
+        int[] positions = new int[pattern.length + 1];
+        for (int i = 0; i < pattern.length; i++) {
+            positions[i] = goalCells[pattern[i]];
+        }
+        positions[pattern.length] = goalCells[0];
+
+        byte[] search = new byte[(int) searchSize];
+        Arrays.fill(search, (byte) UNREACHED);
+        int goal = (int) rank(positions, positions.length, cells);
+        search[goal] = 0;
+
+        IntQueue current = new IntQueue();
+        IntQueue next = new IntQueue();
+        current.add(goal);
+        int[] neighbours = new int[4];
+
+        for (int distance = 0; !current.isEmpty(); distance++) {
+            if (distance + 1 >= UNREACHED) {
+                throw new IllegalStateException("Abstract distances exceed " + (UNREACHED - 1));
+            }
+
+            while (!current.isEmpty()) {
+                int index = current.poll();
+                if ((search[index] & 0xFF) != distance)
+                    continue;
+                unrank(index, positions, cells);
+
+                int blank = positions[pattern.length];
+                int neighbourCount = 0;
+                if (blank >= columns) {
+                    neighbours[neighbourCount++] = blank - columns;
+                }
+                if (blank % columns > 0) {
+                    neighbours[neighbourCount++] = blank - 1;
+                }
+                if (blank % columns < columns - 1) {
+                    neighbours[neighbourCount++] = blank + 1;
+                }
+                if (blank + columns < cells) {
+                    neighbours[neighbourCount++] = blank + columns;
+                }
+
+                for (int n = 0; n < neighbourCount; n++) {
+                    int cell = neighbours[n];
+                    int moved = -1;
+                    for (int i = 0; i < pattern.length; i++) {
+                        if (positions[i] == cell) {
+                            moved = i;
+                        }
+                    }
+
+                    if (moved >= 0) {
+                        positions[moved] = blank;
+                    }
+                    positions[pattern.length] = cell;
+                    int neighbour = (int) rank(positions, positions.length, cells);
+                    if (moved >= 0) {
+                        positions[moved] = cell;
+                    }
+                    positions[pattern.length] = blank;
+
+                    int cost = moved >= 0 || !additive ? 1 : 0;
+                    if (distance + cost < (search[neighbour] & 0xFF)) {
+                        search[neighbour] = (byte) (distance + cost);
+                        (cost == 0 ? current : next).add(neighbour);
+                    }
+                }
+            }
+
+            IntQueue swap = current;
+            current = next;
+            next = swap;
+        }
+
+        FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        StateSnapshot.SectionWriter writer = new StateSnapshot.SectionWriter(channel);
+
+        writer.putBytes(MAGIC);
+        writer.putInt(VERSION);
+        writer.putInt(puzzle.getRows());
+        writer.putInt(puzzle.getColumns());
+        writer.putInt(pattern.length);
+        writer.putInt(additive ? FLAG_ADDITIVE : 0);
+        writer.putLong(puzzle.getGoalState());
+
+        for (int tile : pattern) {
+            writer.putInt(tile);
+        }
+        writer.align();
+
+        //every block of blank cells belongs to one placement of the pattern tiles
+        int blankCells = cells - pattern.length;
+        for (int block = 0; block < search.length; block += blankCells) {
+            int distance = UNREACHED;
+            for (int i = block; i < block + blankCells; i++) {
+                distance = Math.min(distance, search[i] & 0xFF);
+            }
+            writer.putByte((byte) distance);
+        }
+
+        writer.flush();
+        channel.close();
+    }
+
+    private static void checkPattern(int[] pattern, int cells) {
+        boolean[] seen = new boolean[cells];
+        for (int tile : pattern) {
+            if (tile <= 0 || tile >= cells || seen[tile]) {
+                throw new IllegalArgumentException("Pattern tiles must be distinct tiles from 1 to " + (cells - 1)
+                        + ", got " + Arrays.toString(pattern));
+            }
+            seen[tile] = true;
+        }
+    }
+
+    /**
+     * Memory-maps a database file written by {@link #build}.
+     *
+     * @param filePath path of the database file
+     * @param puzzle puzzle the database is used for
+     * @return mapped database
+     * @throws IOException if the file is not a database for the size and goal of the puzzle
+     */
+    public static PatternDatabase map(String filePath, SlidingPuzzle puzzle) throws IOException {
+
+        FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ);
+        try {
+            ByteBuffer header = StateSnapshot.map(channel, 0, HEADER_SIZE);
+            for (byte expected : MAGIC) {
+                if (header.get() != expected) {
+                    throw new IOException(filePath + " is not a pattern database");
+                }
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException(filePath + " has pattern database version " + version + ", expected " + VERSION);
+            }
+            int rows = header.getInt();
+            int columns = header.getInt();
+            int patternSize = header.getInt();
+            int flags = header.getInt();
+            long goalState = header.getLong();
+            if (rows != puzzle.getRows() || columns != puzzle.getColumns() || goalState != puzzle.getGoalState()) {
+                throw new IOException(filePath + " was built for another puzzle size or goal");
+            }
+
+            int cells = rows * columns;
+            int[] pattern = new int[patternSize];
+            StateSnapshot.map(channel, HEADER_SIZE, 4L * patternSize).asIntBuffer().get(pattern);
+            long position = StateSnapshot.align(HEADER_SIZE + 4L * patternSize);
+            ByteBuffer distances = StateSnapshot.map(channel, position, placements(cells, patternSize));
+
+            return new PatternDatabase(cells, pattern, (flags & FLAG_ADDITIVE) != 0, distances);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Opens a combination of databases, written as "pdb:" followed by groups of files
+     * separated by commas. The files of a group are added, the groups are maximized, so
+     * "pdb:a+b+c,d" is the larger of a + b + c and d. Added databases must be additive and
+     * have disjoint patterns, otherwise the sum could overestimate.
+     *
+     * @param spec database files with the "pdb:" prefix
+     * @param puzzle puzzle the databases are used for
+     * @return combined heuristic
+     * @throws IOException if a file is not a database for the puzzle
+     */
+    public static Heuristic open(String spec, SlidingPuzzle puzzle) throws IOException {
+
+        String[] groups = spec.substring(PREFIX.length()).split(",");
+        Heuristic[] sums = new Heuristic[groups.length];
+
+        for (int g = 0; g < groups.length; g++) {
+            String[] files = groups[g].split("\\+");
+            PatternDatabase[] databases = new PatternDatabase[files.length];
+            boolean[] used = new boolean[16];
+            for (int i = 0; i < files.length; i++) {
+                databases[i] = map(files[i], puzzle);
+                if (files.length == 1)
+                    continue;
+
+                if (!databases[i].additive) {
+                    throw new IllegalArgumentException(files[i] + " is not additive and cannot be added");
+                }
+                for (int tile : databases[i].pattern) {
+                    if (used[tile]) {
+                        throw new IllegalArgumentException(files[i] + " shares tile " + tile
+                                + " with another database of the sum");
+                    }
+                    used[tile] = true;
+                }
+            }
+
+            sums[g] = databases.length == 1 ? databases[0] : state -> {
+                double sum = 0;
+                for (PatternDatabase database : databases) {
+                    sum += database.estimate(state);
+                }
+                return sum;
+            };
+        }
+
+        if (sums.length == 1) {
+            return sums[0];
+        }
+        return state -> {
+            double estimate = 0;
+            for (Heuristic sum : sums) {
+                estimate = Math.max(estimate, sum.estimate(state));
+            }
+            return estimate;
+        };
+    }
+
+    public int[] getPattern() {
+        return pattern.clone();
+    }
+
+    public boolean isAdditive() {
+        return additive;
+    }
+
+    /**
+     * @return abstract distance of the placement of the pattern tiles, infinity for a
+     *         placement that cannot reach the goal
+     */
+    @Override
+    public double estimate(long state) {
+
+        //the cells of the pattern tiles, 4 bits each like the state, so nothing is allocated
+        long positions = 0;
+        for (int cell = 0; cell < cells; cell++) {
+            int i = patternIndex[SlidingPuzzle.tile(state, cell)];
+            if (i >= 0) {
+                positions |= (long) cell << (4 * i);
+            }
+        }
+
+        //same mixed radix rank as rank(), the earlier elements below a cell counted in a bit mask
+        long rank = 0;
+        int used = 0;
+        for (int i = 0; i < pattern.length; i++) {
+            int cell = (int) (positions >>> (4 * i)) & 0xF;
+            rank = rank * (cells - i) + cell - Integer.bitCount(used & ((1 << cell) - 1));
+            used |= 1 << cell;
+        }
+
+        int distance = distances.get((int) rank) & 0xFF;
+        return distance == UNREACHED ? Double.POSITIVE_INFINITY : distance;
+    }
+
+    //number of ways to place count distinct elements into cells
+    private static long placements(int cells, int count) {
+        long placements = 1;
+        for (int i = 0; i < count; i++) {
+            placements *= cells - i;
+        }
+        return placements;
+    }
+
+    /**
+     * Ranks a partial permutation in mixed radix: the first element is a digit of base
+     * cells, the next one of base cells - 1, and so on, where each digit counts the free
+     * cells before the position of its element.
+     */
+    private static long rank(int[] positions, int count, int cells) {
+        long rank = 0;
+        for (int i = 0; i < count; i++) {
+            int digit = positions[i];
+            for (int j = 0; j < i; j++) {
+                if (positions[j] < positions[i]) {
+                    digit--;
+                }
+            }
+            rank = rank * (cells - i) + digit;
+        }
+        return rank;
+    }
+
+    private static void unrank(long rank, int[] positions, int cells) {
+
+        for (int i = positions.length - 1; i >= 0; i--) {
+            positions[i] = (int) (rank % (cells - i));
+            rank /= cells - i;
+        }
+
+        //turn every digit back into the cell, skipping the cells of earlier elements
+        int used = 0;
+        for (int i = 0; i < positions.length; i++) {
+            int digit = positions[i];
+            int cell = 0;
+            while (true) {
+                if ((used & (1 << cell)) == 0) {
+                    if (digit == 0)
+                        break;
+                    digit--;
+                }
+                cell++;
+            }
+            positions[i] = cell;
+            used |= 1 << cell;
+        }
+    }
+
+    private static class IntQueue {
+        private int[] values = new int[1024];
+        private int head;
+        private int tail;
+
+        public boolean isEmpty() {
+            return head == tail;
+        }
+
+        public void add(int value) {
+            if (tail == values.length) {
+                //reuse the space of polled values before growing
+                if (head > values.length / 2) {
+                    System.arraycopy(values, head, values, 0, tail - head);
+                } else {
+                    values = Arrays.copyOf(values, values.length * 2);
+                    System.arraycopy(values, head, values, 0, tail - head);
+                }
+                tail -= head;
+                head = 0;
+            }
+            values[tail++] = value;
+        }
+
+        public int poll() {
+            int value = values[head++];
+            if (head == tail) {
+                head = 0;
+                tail = 0;
+            }
+            return value;
+        }
+    }
+
+}
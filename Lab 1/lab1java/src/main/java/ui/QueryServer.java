@@ -0,0 +1,197 @@
+package ui;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Long-running query mode. The state space is loaded once and every query line is
+ * answered in the usual report format, followed by an empty line.
+ * <p>
+ * A query line has the form {@code <alg> <start> <goal>[,<goal>...] [<heuristic file>]},
+ * where {@code -} in place of the start or the goals uses the ones from the state space
+ * file. Heuristic files and {@code alt:<landmark file>} specs are opened the first time they
+ * are used and kept afterwards, and the answers to recent queries are kept in an LRU cache.
+ */
+public class QueryServer {
+
+    private final StateGraph graph;
+    private final String stateSpaceFile;
+    private final String defaultHeuristicsFile;
+    private final HashMap<String, Heuristic> heuristicsByFile;
+    private final HashMap<String, Landmarks> landmarksByFile;
+    private final LinkedHashMap<String, String> recentAnswers;
+    private final boolean pruneDeadEnds;
+
+    public QueryServer(StateGraph graph, String stateSpaceFile, String defaultHeuristicsFile, int cacheCapacity,
+                       boolean pruneDeadEnds) {
+        this.graph = graph;
+        this.pruneDeadEnds = pruneDeadEnds;
+        this.stateSpaceFile = stateSpaceFile;
+        this.defaultHeuristicsFile = defaultHeuristicsFile;
+        this.heuristicsByFile = new HashMap<>();
+        this.landmarksByFile = new HashMap<>();
+        this.recentAnswers = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > cacheCapacity;
+            }
+        };
+    }
+
+    /**
+     * Answers a single query line.
+     *
+     * @param query query line
+     * @return report of the search, or an [ERROR] line if the query is malformed
+     */
+    public String answer(String query) {
+
+        String[] parts = query.trim().split(" ");
+        if (parts.length < 3) {
+            return "[ERROR]: expected <alg> <start> <goal>[,<goal>...] [<heuristic file>]";
+        }
+
+        String alg = parts[0];
+        int startState = parts[1].equals("-") ? graph.getStartState() : graph.getStateId(parts[1]);
+        if (startState < 0) {
+            return "[ERROR]: unknown state " + parts[1];
+        }
+
+        BitSet goalStates = graph.getGoalStates();
+        if (!parts[2].equals("-")) {
+            goalStates = new BitSet();
+            for (String goalStateName : parts[2].split(",")) {
+                int goalState = graph.getStateId(goalStateName);
+                if (goalState < 0) {
+                    return "[ERROR]: unknown state " + goalStateName;
+                }
+                goalStates.set(goalState);
+            }
+        }
+
+        String heuristicsFile = parts.length > 3 ? parts[3] : defaultHeuristicsFile;
+        if (heuristicsFile == null && graph.getHeuristics() != null) {
+            heuristicsFile = stateSpaceFile;
+        }
+        String key = alg + " " + startState + " " + goalStates + (alg.equals("astar") ? " " + heuristicsFile : "");
+
+        synchronized (recentAnswers) {
+            String cached = recentAnswers.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        String answer;
+        switch (alg) {
+            case "bfs":
+                answer = new BFS(pruneDeadEnds).search(graph, startState, goalStates).format("# BFS", graph);
+                break;
+            case "ucs":
+                answer = new UCS(pruneDeadEnds).search(graph, startState, goalStates).format("# UCS", graph);
+                break;
+            case "bucs":
+                answer = new BidirectionalUCS().search(graph, startState, goalStates).format("# BUCS", graph);
+                break;
+            case "astar":
+                if (heuristicsFile == null) {
+                    return "[ERROR]: astar needs a heuristic file";
+                }
+                Heuristic heuristics;
+                try {
+                    heuristics = getHeuristics(heuristicsFile, goalStates);
+                } catch (IOException e) {
+                    return "[ERROR]: cannot read " + heuristicsFile + ": " + e.getMessage();
+                }
+                answer = new ASTAR(pruneDeadEnds).search(graph, startState, goalStates, heuristics)
+                        .format("# A-STAR " + heuristicsFile, graph);
+                break;
+            default:
+                return "[ERROR]: unknown algorithm " + alg;
+        }
+
+        synchronized (recentAnswers) {
+            recentAnswers.put(key, answer);
+        }
+        return answer;
+    }
+
+    /**
+     * Answers query lines until the end of the input.
+     *
+     * @param in query lines
+     * @param out answers
+     * @throws IOException if reading the queries fails
+     */
+    public void serve(BufferedReader in, PrintWriter out) throws IOException {
+
+        String line = in.readLine();
+        while (line != null) {
+            if (!line.isBlank()) {
+                out.println(answer(line));
+                out.println();
+                out.flush();
+            }
+            line = in.readLine();
+        }
+    }
+
+    /**
+     * Accepts connections on the loopback interface and answers each one on its own thread.
+     *
+     * @param port port to listen on
+     * @throws IOException if the server socket cannot be opened
+     */
+    public void serve(int port) throws IOException {
+
+        ServerSocket serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        while (true) {
+            Socket socket = serverSocket.accept();
+            Thread connection = new Thread(() -> {
+                try (socket) {
+                    BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                    PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+                    serve(in, out);
+                } catch (IOException e) {
+                    System.err.println("Connection closed: " + e.getMessage());
+                }
+            });
+            connection.setDaemon(true);
+            connection.start();
+        }
+    }
+
+    /**
+     * Landmark files are kept mapped and aimed at the goals of every query, since an ALT
+     * heuristic towards other goals can overestimate.
+     */
+    private Heuristic getHeuristics(String filePath, BitSet goalStates) throws IOException {
+        if (filePath.equals(stateSpaceFile)) {
+            return graph.getHeuristics();
+        }
+        if (filePath.startsWith(Landmarks.PREFIX)) {
+            Landmarks landmarks;
+            synchronized (landmarksByFile) {
+                landmarks = landmarksByFile.get(filePath);
+                if (landmarks == null) {
+                    landmarks = Landmarks.map(filePath.substring(Landmarks.PREFIX.length()), graph);
+                    landmarksByFile.put(filePath, landmarks);
+                }
+            }
+            return landmarks.towards(goalStates);
+        }
+        synchronized (heuristicsByFile) {
+            Heuristic heuristics = heuristicsByFile.get(filePath);
+            if (heuristics == null) {
+                heuristics = graph.loadHeuristics(filePath);
+                heuristicsByFile.put(filePath, heuristics);
+            }
+            return heuristics;
+        }
+    }
+
+}
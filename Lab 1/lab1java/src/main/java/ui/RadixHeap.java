@@ -0,0 +1,183 @@
+package ui;
+
+import java.util.Arrays;
+
+/**
+ * Monotone radix heap for non-negative integral keys, as in uniform cost search over
+ * integral edge costs, where a key is never below the last key polled.
+ * <p>
+ * Bucket 0 holds the states whose key equals the last polled key, bucket b > 0 those
+ * whose key first differs from it in bit b - 1. When bucket 0 runs empty, the lowest
+ * non-empty bucket is split around its smallest key, which moves every state at most 64
+ * times in total instead of paying log n comparisons per operation. Bucket 0 is kept as a
+ * small heap by state id, so equal keys come out by smaller state id like in
+ * {@link IndexedMinHeap}.
+ */
+public class RadixHeap implements OpenList {
+
+    private static final int BUCKETS = 65;
+
+    private final int[][] buckets;
+    private final int[] bucketSizes;
+    private int[] bucketOf;
+    private int[] positions;
+    private long[] keys;
+    private long last;
+    private int size;
+
+    public RadixHeap(int capacity) {
+        this.buckets = new int[BUCKETS][];
+        this.bucketSizes = new int[BUCKETS];
+        for (int b = 0; b < BUCKETS; b++) {
+            buckets[b] = new int[16];
+        }
+        this.bucketOf = new int[capacity];
+        this.positions = new int[capacity];
+        this.keys = new long[capacity];
+        Arrays.fill(bucketOf, -1);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean contains(int state) {
+        return state < bucketOf.length && bucketOf[state] >= 0;
+    }
+
+    public long getKey(int state) {
+        return keys[state];
+    }
+
+    /**
+     * @param key whole number, not below the last polled key
+     */
+    @Override
+    public void insert(int state, double key) {
+        if (state >= bucketOf.length) {
+            grow(state + 1);
+        }
+        keys[state] = (long) key;
+        place(state);
+        size++;
+    }
+
+    /**
+     * Moves a state to the bucket of its lower key. States in bucket 0 already have the
+     * smallest possible key and are never decreased.
+     */
+    @Override
+    public void decreaseKey(int state, double key) {
+        int bucket = bucketOf[state];
+        int[] values = buckets[bucket];
+        int moved = values[--bucketSizes[bucket]];
+        values[positions[state]] = moved;
+        positions[moved] = positions[state];
+
+        keys[state] = (long) key;
+        place(state);
+    }
+
+    @Override
+    public int poll() {
+
+        if (bucketSizes[0] == 0) {
+            int bucket = 1;
+            while (bucketSizes[bucket] == 0) {
+                bucket++;
+            }
+
+            int[] values = buckets[bucket];
+            int count = bucketSizes[bucket];
+            long smallest = Long.MAX_VALUE;
+            for (int i = 0; i < count; i++) {
+                smallest = Math.min(smallest, keys[values[i]]);
+            }
+
+            //relative to the new last key every state of the bucket belongs to a lower one
+            last = smallest;
+            bucketSizes[bucket] = 0;
+            for (int i = 0; i < count; i++) {
+                place(values[i]);
+            }
+        }
+
+        int state = pollSmallestId();
+        bucketOf[state] = -1;
+        size--;
+        return state;
+    }
+
+    public void clear() {
+        for (int b = 0; b < BUCKETS; b++) {
+            for (int i = 0; i < bucketSizes[b]; i++) {
+                bucketOf[buckets[b][i]] = -1;
+            }
+            bucketSizes[b] = 0;
+        }
+        size = 0;
+        last = 0;
+    }
+
+    private void place(int state) {
+        int bucket = keys[state] == last ? 0 : 64 - Long.numberOfLeadingZeros(keys[state] ^ last);
+        if (bucketSizes[bucket] == buckets[bucket].length) {
+            buckets[bucket] = Arrays.copyOf(buckets[bucket], bucketSizes[bucket] * 2);
+        }
+        bucketOf[state] = bucket;
+        if (bucket == 0) {
+            pushSmallestId(state);
+        } else {
+            positions[state] = bucketSizes[bucket];
+            buckets[bucket][bucketSizes[bucket]++] = state;
+        }
+    }
+
+    private void pushSmallestId(int state) {
+        int[] heap = buckets[0];
+        int index = bucketSizes[0]++;
+        while (index > 0 && heap[(index - 1) >>> 1] > state) {
+            heap[index] = heap[(index - 1) >>> 1];
+            index = (index - 1) >>> 1;
+        }
+        heap[index] = state;
+    }
+
+    private int pollSmallestId() {
+        int[] heap = buckets[0];
+        int smallest = heap[0];
+        int state = heap[--bucketSizes[0]];
+        int count = bucketSizes[0];
+
+        int index = 0;
+        while (2 * index + 1 < count) {
+            int child = 2 * index + 1;
+            if (child + 1 < count && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (heap[child] >= state) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = state;
+        return smallest;
+    }
+
+    private void grow(int minCapacity) {
+        int capacity = Math.max(minCapacity, Math.max(16, bucketOf.length * 2));
+        int oldCapacity = bucketOf.length;
+        bucketOf = Arrays.copyOf(bucketOf, capacity);
+        positions = Arrays.copyOf(positions, capacity);
+        keys = Arrays.copyOf(keys, capacity);
+        Arrays.fill(bucketOf, oldCapacity, capacity, -1);
+    }
+
+}
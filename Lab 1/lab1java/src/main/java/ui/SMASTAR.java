@@ -0,0 +1,276 @@
+package ui;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Simplified memory-bounded A* (SMA*). The search tree holds at most a fixed number of
+ * nodes. Nodes generate their successors one at a time, and when the tree is full the
+ * shallowest leaf with the highest f value is dropped. Its parent remembers the f value of
+ * the dropped child and regenerates it with that value once everything else it can reach
+ * looks worse.
+ * <p>
+ * The search is optimal among the solutions whose path fits into the node budget. A path
+ * that would need more nodes than the budget allows is treated as a dead end.
+ */
+public class SMASTAR {
+
+    private static class Node implements Comparable<Node> {
+        private final int state;
+        private final int edge;
+        private final double cost;
+        private final int depth;
+        private final long serial;
+        private final Node parent;
+        private final List<Node> children;
+        private final HashMap<Integer, Double> forgotten;
+        private double estimate;
+        private int nextEdge;
+        private boolean open;
+
+        public Node(int state, int edge, double cost, Node parent, long serial, int nextEdge) {
+            this.state = state;
+            this.edge = edge;
+            this.cost = cost;
+            this.depth = parent == null ? 0 : parent.depth + 1;
+            this.serial = serial;
+            this.parent = parent;
+            this.children = new ArrayList<>();
+            this.forgotten = new HashMap<>();
+            this.nextEdge = nextEdge;
+        }
+
+        //best node first: lowest f value, then the deepest one, then the oldest one
+        @Override
+        public int compareTo(Node other) {
+            if (this.estimate != other.estimate) {
+                return Double.compare(this.estimate, other.estimate);
+            } else if (this.depth != other.depth) {
+                return Integer.compare(other.depth, this.depth);
+            } else {
+                return Long.compare(this.serial, other.serial);
+            }
+        }
+    }
+
+    private final int nodeBudget;
+    private StateGraph graph;
+    private BitSet goalStates;
+    private TreeSet<Node> open;
+
+    /**
+     * @param nodeBudget maximum number of search nodes kept in memory, at least 2
+     */
+    public SMASTAR(int nodeBudget) {
+        if (nodeBudget < 2) {
+            throw new IllegalArgumentException("Node budget must be at least 2, was " + nodeBudget);
+        }
+        this.nodeBudget = nodeBudget;
+    }
+
+    public void runAlgorithm(String filePathStateSpace, String filePathHeuristics) throws IOException {
+
+        StateGraph graph = StateGraph.load(filePathStateSpace);
+
+        //without a heuristic file, use the heuristic column of a snapshot
+        Heuristic heuristic = filePathHeuristics != null ? graph.openHeuristics(filePathHeuristics) : graph.getHeuristics();
+        String heuristicName = filePathHeuristics != null ? filePathHeuristics : filePathStateSpace;
+
+        SearchResult result = search(graph, graph.getStartState(), graph.getGoalStates(), heuristic);
+        System.out.println(result.format("# SMA-STAR " + heuristicName, graph));
+    }
+
+    public SearchResult search(StateGraph graph, int startState, BitSet goalStates, Heuristic heuristic) {
+
+        this.graph = graph;
+        this.goalStates = goalStates;
+        this.open = new TreeSet<>();
+
+        int statesVisited = 0;
+        int nodes = 1;
+        int peakNodes = 1;
+        int evictions = 0;
+        long serial = 0;
+
+        Node root = new Node(startState, -1, 0, null, serial++, graph.getEdgesBegin(startState));
+        root.estimate = heuristic.estimate(startState);
+        skipCycles(root);
+        reopen(root);
+        backUpLeaf(root);
+
+        while (!open.isEmpty()) {
+
+            Node best = open.first();
+            if (best.estimate == Double.POSITIVE_INFINITY)
+                break;
+
+            if (goalStates.get(best.state)) {
+                return found(best, statesVisited, peakNodes, evictions);
+            }
+
+            //successors are generated in edge order first, dropped ones are regenerated best first
+            int edge;
+            double forgottenEstimate = 0;
+            if (best.nextEdge < graph.getEdgesEnd(best.state)) {
+                edge = best.nextEdge++;
+                skipCycles(best);
+            } else {
+                edge = bestForgotten(best);
+                forgottenEstimate = best.forgotten.remove(edge);
+            }
+
+            int neighbour = graph.getEdgeTarget(edge);
+            Node child = new Node(neighbour, edge, best.cost + graph.getEdgeCost(edge), best, serial++,
+                    graph.getEdgesBegin(neighbour));
+            statesVisited++;
+
+            //a non-goal node that takes the last free slot can never lead to a solution that fits
+            if (child.depth >= nodeBudget - 1 && !goalStates.get(neighbour)) {
+                child.estimate = Double.POSITIVE_INFINITY;
+            } else {
+                child.estimate = Math.max(Math.max(best.estimate, forgottenEstimate),
+                        child.cost + heuristic.estimate(neighbour));
+            }
+            skipCycles(child);
+            best.children.add(child);
+
+            if (!hasSuccessor(best)) {
+                open.remove(best);
+                best.open = false;
+            }
+            backUp(best);
+
+            while (nodes >= nodeBudget) {
+                evict(best);
+                evictions++;
+                nodes--;
+            }
+            reopen(child);
+            nodes++;
+            peakNodes = Math.max(peakNodes, nodes);
+            backUpLeaf(child);
+        }
+
+        return SearchResult.notFound(statesVisited)
+                .addDetail("PEAK_NODES", peakNodes)
+                .addDetail("EVICTIONS", evictions);
+    }
+
+    private void skipCycles(Node node) {
+        int end = graph.getEdgesEnd(node.state);
+        while (node.nextEdge < end && onPath(node, graph.getEdgeTarget(node.nextEdge))) {
+            node.nextEdge++;
+        }
+    }
+
+    private boolean hasSuccessor(Node node) {
+        return node.nextEdge < graph.getEdgesEnd(node.state) || !node.forgotten.isEmpty();
+    }
+
+    private static int bestForgotten(Node node) {
+        int bestEdge = -1;
+        double bestEstimate = Double.POSITIVE_INFINITY;
+        for (Map.Entry<Integer, Double> entry : node.forgotten.entrySet()) {
+            if (bestEdge < 0 || entry.getValue() < bestEstimate
+                    || (entry.getValue() == bestEstimate && entry.getKey() < bestEdge)) {
+                bestEdge = entry.getKey();
+                bestEstimate = entry.getValue();
+            }
+        }
+        return bestEdge;
+    }
+
+    private static boolean onPath(Node node, int state) {
+        for (Node ancestor = node; ancestor != null; ancestor = ancestor.parent) {
+            if (ancestor.state == state) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //a new node without successors is a dead end, unless it is a goal state
+    private void backUpLeaf(Node node) {
+        if (!hasSuccessor(node) && !goalStates.get(node.state)) {
+            backUp(node);
+        }
+    }
+
+    /**
+     * Once all successors of a node have been generated, its f value becomes the smallest f
+     * value of its children, dropped ones included, or infinity for a dead end. Changes are
+     * passed up to the ancestors that have generated all their successors as well.
+     */
+    private void backUp(Node node) {
+
+        for (; node != null && node.nextEdge == graph.getEdgesEnd(node.state); node = node.parent) {
+
+            double estimate = Double.POSITIVE_INFINITY;
+            for (Node child : node.children) {
+                estimate = Math.min(estimate, child.estimate);
+            }
+            for (double forgottenEstimate : node.forgotten.values()) {
+                estimate = Math.min(estimate, forgottenEstimate);
+            }
+            if (estimate == node.estimate)
+                return;
+            setEstimate(node, estimate);
+        }
+    }
+
+    /**
+     * Drops the shallowest leaf with the highest f value. The node that is currently being
+     * expanded has a new child and is never a leaf, the root is never dropped.
+     */
+    private void evict(Node expanding) {
+
+        Node worst = null;
+        for (Node node : open.descendingSet()) {
+            if (node.children.isEmpty() && node.parent != null && node != expanding) {
+                worst = node;
+                break;
+            }
+        }
+
+        open.remove(worst);
+        worst.open = false;
+
+        //a dropped dead end is not worth remembering
+        Node parent = worst.parent;
+        parent.children.remove(worst);
+        if (worst.estimate < Double.POSITIVE_INFINITY) {
+            parent.forgotten.put(worst.edge, worst.estimate);
+        }
+        if (!parent.open) {
+            reopen(parent);
+        }
+    }
+
+    private void setEstimate(Node node, double estimate) {
+        if (node.open) {
+            open.remove(node);
+            node.estimate = estimate;
+            open.add(node);
+        } else {
+            node.estimate = estimate;
+        }
+    }
+
+    private void reopen(Node node) {
+        node.open = true;
+        open.add(node);
+    }
+
+    private SearchResult found(Node goal, int statesVisited, int peakNodes, int evictions) {
+
+        int[] path = new int[goal.depth + 1];
+        for (Node node = goal; node != null; node = node.parent) {
+            path[node.depth] = node.state;
+        }
+
+        return SearchResult.ofPath(statesVisited, graph, path)
+                .addDetail("PEAK_NODES", peakNodes)
+                .addDetail("EVICTIONS", evictions);
+    }
+
+}
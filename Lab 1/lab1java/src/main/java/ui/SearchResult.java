@@ -0,0 +1,204 @@
+package ui;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.StringJoiner;
+
+/**
+ * Outcome of one search: the path as state ids plus the counters printed in the report.
+ */
+public class SearchResult {
+
+    private final boolean foundSolution;
+    private final int statesVisited;
+    private final double totalCost;
+    private final long[] path;
+    private final LinkedHashMap<String, String> details;
+    private SearchStats stats;
+
+    private SearchResult(boolean foundSolution, int statesVisited, double totalCost, long[] path) {
+        this.foundSolution = foundSolution;
+        this.statesVisited = statesVisited;
+        this.totalCost = totalCost;
+        this.path = path;
+        this.details = new LinkedHashMap<>();
+    }
+
+    public static SearchResult notFound(int statesVisited) {
+        return new SearchResult(false, statesVisited, 0, new long[0]);
+    }
+
+    /**
+     * Builds the result from a finished path. The cost is summed along the path from the
+     * start, in the same order as the forward searches accumulate it, taking the cheapest
+     * edge where a state lists the same neighbour twice.
+     *
+     * @param statesVisited number of expanded states
+     * @param graph graph the path belongs to
+     * @param path state ids from the start state to the goal state
+     * @return found result
+     */
+    public static SearchResult ofPath(int statesVisited, StateGraph graph, int[] path) {
+
+        double totalCost = 0;
+        for (int i = 1; i < path.length; i++) {
+            double edgeCost = Double.POSITIVE_INFINITY;
+            for (int edge = graph.getEdgesBegin(path[i - 1]); edge < graph.getEdgesEnd(path[i - 1]); edge++) {
+                if (graph.getEdgeTarget(edge) == path[i]) {
+                    edgeCost = Math.min(edgeCost, graph.getEdgeCost(edge));
+                }
+            }
+            totalCost += edgeCost;
+        }
+
+        return new SearchResult(true, statesVisited, totalCost, Arrays.stream(path).asLongStream().toArray());
+    }
+
+    /**
+     * @param statesVisited number of expanded states
+     * @param totalCost cost of the path
+     * @param path states from the start state to the goal state
+     * @return found result
+     */
+    public static SearchResult found(int statesVisited, double totalCost, long[] path) {
+        return new SearchResult(true, statesVisited, totalCost, path);
+    }
+
+    /**
+     * Builds the result by following parent links back from the final state.
+     *
+     * @param statesVisited number of expanded states, not counting the start state
+     * @param totalCost cost of the path
+     * @param parents parent state id of every reached state
+     * @param startState state the path starts from
+     * @param finalState goal state the path ends in
+     * @return found result
+     */
+    public static SearchResult found(int statesVisited, double totalCost, int[] parents, int startState, int finalState) {
+        return new SearchResult(true, statesVisited, totalCost, followParents(parents, startState, finalState, null));
+    }
+
+    /**
+     * Builds the result by following parent links between the slots of a state index.
+     *
+     * @param statesVisited number of expanded states, not counting the start state
+     * @param totalCost cost of the path
+     * @param parents parent slot of every reached slot
+     * @param startSlot slot the path starts from
+     * @param finalSlot slot of the goal state the path ends in
+     * @param states index the slots belong to
+     * @return found result
+     */
+    public static SearchResult found(int statesVisited, double totalCost, int[] parents, int startSlot, int finalSlot,
+                                     StateIndex states) {
+        return new SearchResult(true, statesVisited, totalCost, followParents(parents, startSlot, finalSlot, states));
+    }
+
+    private static long[] followParents(int[] parents, int start, int end, StateIndex states) {
+
+        int pathLength = 1;
+        for (int slot = end; slot != start; slot = parents[slot]) {
+            pathLength++;
+        }
+
+        long[] path = new long[pathLength];
+        int slot = end;
+        for (int i = pathLength - 1; i > 0; i--) {
+            path[i] = slot;
+            slot = parents[slot];
+        }
+        path[0] = start;
+
+        //slots of an explicit graph are the state ids already
+        if (states != null) {
+            for (int i = 0; i < pathLength; i++) {
+                path[i] = states.getState((int) path[i]);
+            }
+        }
+        return path;
+    }
+
+    public boolean isFoundSolution() {
+        return foundSolution;
+    }
+
+    public int getStatesVisited() {
+        return statesVisited;
+    }
+
+    public double getTotalCost() {
+        return totalCost;
+    }
+
+    public long[] getPath() {
+        return path;
+    }
+
+    /**
+     * Adds an algorithm specific line that is printed after the standard report fields.
+     *
+     * @param name field name, printed in brackets
+     * @param value field value
+     * @return this result
+     */
+    public SearchResult addDetail(String name, Object value) {
+        details.put(name, String.valueOf(value));
+        return this;
+    }
+
+    public Map<String, String> getDetails() {
+        return details;
+    }
+
+    /**
+     * @param stats counters of the search that produced this result
+     * @return this result
+     */
+    public SearchResult withStats(SearchStats stats) {
+        this.stats = stats;
+        return this;
+    }
+
+    /**
+     * @return counters of the search, or null if the search did not keep them
+     */
+    public SearchStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Formats the result in the report format of the lab. Like the original output, only
+     * the [FOUND_SOLUTION] line and the details are printed when no solution was found.
+     *
+     * @param header first line of the report, e.g. "# UCS"
+     * @param space state space the states of the path belong to
+     * @return report lines without a trailing line break
+     */
+    public String format(String header, StateSpace space) {
+
+        StringBuilder report = new StringBuilder();
+
+        if (!foundSolution) {
+            report.append("[FOUND_SOLUTION]: no");
+        } else {
+            StringJoiner pathNames = new StringJoiner(" => ");
+            for (long state : path) {
+                pathNames.add(space.getName(state));
+            }
+
+            report.append(header).append("\n")
+                    .append("[FOUND_SOLUTION]: yes\n")
+                    .append("[STATES_VISITED]: ").append(statesVisited).append("\n")
+                    .append("[PATH_LENGTH]: ").append(path.length).append("\n")
+                    .append("[TOTAL_COST]: ").append(totalCost).append("\n")
+                    .append("[PATH]: ").append(pathNames);
+        }
+
+        for (Map.Entry<String, String> detail : details.entrySet()) {
+            report.append("\n[").append(detail.getKey()).append("]: ").append(detail.getValue());
+        }
+        return report.toString();
+    }
+
+}
@@ -0,0 +1,304 @@
+package ui;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Counters of one search, filled in by the search loop and attached to its result.
+ * <p>
+ * Every search also emits a {@code ui.Search} event and {@link StateGraph#load} a
+ * {@code ui.StateSpaceLoad} event for JDK Flight Recorder, so the searches of a running
+ * query server can be recorded with -XX:StartFlightRecording or jcmd JFR.start without
+ * a profiler.
+ * <p>
+ * Like {@link SearchWorkspace}, the counters are kept per thread and reused by every search
+ * on that thread, and the search event is only created while a recording enables it, so a
+ * search that does not keep its counters allocates nothing for them. Nested searches on the
+ * same thread must not share them.
+ */
+public class SearchStats {
+
+    private static final ThreadLocal<SearchStats> STATS = ThreadLocal.withInitial(SearchStats::new);
+    private static final EventType SEARCH_EVENT_TYPE = EventType.getEventType(SearchEvent.class);
+
+    private String algorithm;
+    private SearchEvent event;
+    private long startNanos;
+
+    long expanded;
+    long generated;
+    long reopened;
+    long closed;
+    private long openSize;
+    private long peakOpen;
+    private long searchNanos;
+    private long loadNanos = -1;
+
+    @Name("ui.Search")
+    @Label("Search")
+    @Category("Lab 1")
+    @Description("One search of a state space")
+    static class SearchEvent extends Event {
+        @Label("Algorithm")
+        String algorithm;
+        @Label("Found Solution")
+        boolean foundSolution;
+        @Label("States Visited")
+        int statesVisited;
+        @Label("Total Cost")
+        double totalCost;
+        @Label("Expanded")
+        long expanded;
+        @Label("Generated")
+        long generated;
+        @Label("Reopened")
+        long reopened;
+        @Label("Peak Open")
+        long peakOpen;
+        @Label("Closed")
+        long closed;
+    }
+
+    @Name("ui.StateSpaceLoad")
+    @Label("State Space Load")
+    @Category("Lab 1")
+    @Description("Parsing or mapping of a state space file")
+    static class LoadEvent extends Event {
+        @Label("State Space")
+        String stateSpace;
+        @Label("Snapshot")
+        boolean snapshot;
+        @Label("States")
+        int states;
+        @Label("Edges")
+        int edges;
+    }
+
+    private SearchStats() {
+    }
+
+    /**
+     * @param algorithm name of the algorithm, as in the report header
+     * @return empty counters of the current thread, with the search clock started
+     */
+    public static SearchStats start(String algorithm) {
+
+        SearchStats stats = STATS.get();
+        stats.algorithm = algorithm;
+        stats.expanded = 0;
+        stats.generated = 0;
+        stats.reopened = 0;
+        stats.closed = 0;
+        stats.openSize = 0;
+        stats.peakOpen = 0;
+        stats.searchNanos = 0;
+        stats.loadNanos = -1;
+
+        stats.event = null;
+        if (SEARCH_EVENT_TYPE.isEnabled()) {
+            stats.event = new SearchEvent();
+            stats.event.begin();
+        }
+        stats.startNanos = System.nanoTime();
+        return stats;
+    }
+
+    /**
+     * Loads a state space and records how long it took.
+     *
+     * @param spec state space file or sliding puzzle spec
+     * @param loadNanos receives the load time in its first element
+     * @return loaded state space
+     */
+    public static StateSpace load(String spec, long[] loadNanos) throws IOException {
+        long start = System.nanoTime();
+        StateSpace space = StateSpace.load(spec);
+        loadNanos[0] = System.nanoTime() - start;
+        return space;
+    }
+
+    void opened() {
+        openSize++;
+        if (openSize > peakOpen) {
+            peakOpen = openSize;
+        }
+    }
+
+    void polled() {
+        openSize--;
+        expanded++;
+    }
+
+    /**
+     * Stops the search clock and emits the search event.
+     *
+     * @param result outcome of the search
+     * @param keep attach a copy of the counters to the result
+     * @return the result
+     */
+    public SearchResult finish(SearchResult result, boolean keep) {
+
+        searchNanos = System.nanoTime() - startNanos;
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.algorithm = algorithm;
+                event.foundSolution = result.isFoundSolution();
+                event.statesVisited = result.getStatesVisited();
+                event.totalCost = result.getTotalCost();
+                event.expanded = expanded;
+                event.generated = generated;
+                event.reopened = reopened;
+                event.peakOpen = peakOpen;
+                event.closed = closed;
+                event.commit();
+            }
+            event = null;
+        }
+        return keep ? result.withStats(copy()) : result;
+    }
+
+    private SearchStats copy() {
+        SearchStats copy = new SearchStats();
+        copy.algorithm = algorithm;
+        copy.expanded = expanded;
+        copy.generated = generated;
+        copy.reopened = reopened;
+        copy.closed = closed;
+        copy.peakOpen = peakOpen;
+        copy.searchNanos = searchNanos;
+        copy.loadNanos = loadNanos;
+        return copy;
+    }
+
+    public void setLoadNanos(long loadNanos) {
+        this.loadNanos = loadNanos;
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * @return number of states taken from the open list and expanded, the start included
+     */
+    public long getExpanded() {
+        return expanded;
+    }
+
+    /**
+     * @return number of successors generated, duplicates included
+     */
+    public long getGenerated() {
+        return generated;
+    }
+
+    /**
+     * @return number of closed states put back on the open list
+     */
+    public long getReopened() {
+        return reopened;
+    }
+
+    /**
+     * @return largest number of states on the open list, or in a breadth first frontier
+     */
+    public long getPeakOpen() {
+        return peakOpen;
+    }
+
+    /**
+     * @return number of closed states at the end, for breadth first search the seen states
+     */
+    public long getClosed() {
+        return closed;
+    }
+
+    public long getSearchNanos() {
+        return searchNanos;
+    }
+
+    /**
+     * @return load time of the state space, or -1 if the search did not load it
+     */
+    public long getLoadNanos() {
+        return loadNanos;
+    }
+
+    public long getExpansionsPerSecond() {
+        return searchNanos > 0 ? Math.round(expanded * 1e9 / searchNanos) : 0;
+    }
+
+    /**
+     * @return report lines without a trailing line break
+     */
+    public String format() {
+        StringBuilder report = new StringBuilder()
+                .append("[EXPANDED]: ").append(expanded).append("\n")
+                .append("[GENERATED]: ").append(generated).append("\n")
+                .append("[REOPENED]: ").append(reopened).append("\n")
+                .append("[PEAK_OPEN]: ").append(peakOpen).append("\n")
+                .append("[CLOSED]: ").append(closed).append("\n");
+        if (loadNanos >= 0) {
+            report.append("[LOAD_MS]: ").append(millis(loadNanos)).append("\n");
+        }
+        return report.append("[SEARCH_MS]: ").append(millis(searchNanos)).append("\n")
+                .append("[EXPANSIONS_PER_SECOND]: ").append(getExpansionsPerSecond())
+                .toString();
+    }
+
+    /**
+     * @param stateSpace state space the search ran on
+     * @param result result the counters belong to
+     * @return one line JSON object with the outcome and the counters
+     */
+    public String toJson(String stateSpace, SearchResult result) {
+        StringBuilder json = new StringBuilder("{")
+                .append("\"algorithm\":").append(quote(algorithm))
+                .append(",\"stateSpace\":").append(quote(stateSpace))
+                .append(",\"foundSolution\":").append(result.isFoundSolution())
+                .append(",\"statesVisited\":").append(result.getStatesVisited());
+        if (result.isFoundSolution()) {
+            json.append(",\"pathLength\":").append(result.getPath().length)
+                    .append(",\"totalCost\":").append(result.getTotalCost());
+        }
+        json.append(",\"expanded\":").append(expanded)
+                .append(",\"generated\":").append(generated)
+                .append(",\"reopened\":").append(reopened)
+                .append(",\"peakOpen\":").append(peakOpen)
+                .append(",\"closed\":").append(closed);
+        if (loadNanos >= 0) {
+            json.append(",\"loadMs\":").append(millis(loadNanos));
+        }
+        return json.append(",\"searchMs\":").append(millis(searchNanos))
+                .append(",\"expansionsPerSecond\":").append(getExpansionsPerSecond())
+                .append("}").toString();
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.US, "%.3f", nanos / 1e6);
+    }
+
+    private static String quote(String text) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < ' ') {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+}
@@ -0,0 +1,128 @@
+package ui;
+
+import java.util.Arrays;
+
+/**
+ * Arrays of a search over an explicit graph, kept per thread and reused by every query on
+ * that thread. Instead of clearing the arrays, every query starts a new epoch and a state
+ * counts as reached or closed only if it was stamped in the current epoch, so a query
+ * touches only the states it reaches. After the first query on a graph of a given size a
+ * search allocates nothing but its result.
+ * <p>
+ * A workspace belongs to one thread and to one query at a time; nested searches on the
+ * same thread must not share it.
+ */
+public class SearchWorkspace {
+
+    private static final ThreadLocal<SearchWorkspace> WORKSPACES = ThreadLocal.withInitial(SearchWorkspace::new);
+
+    private int epoch;
+    private int[] reachedIn = new int[0];
+    private int[] closedIn = new int[0];
+    private double[] costs = new double[0];
+    private int[] parents = new int[0];
+    private IndexedMinHeap heap;
+    private RadixHeap radixHeap;
+
+    private SearchWorkspace() {
+    }
+
+    /**
+     * Returns the workspace of the current thread, emptied for a new query.
+     *
+     * @param stateCount number of states of the graph to search
+     * @return workspace with room for all states
+     */
+    public static SearchWorkspace acquire(int stateCount) {
+        SearchWorkspace workspace = WORKSPACES.get();
+        workspace.reset(stateCount);
+        return workspace;
+    }
+
+    private void reset(int stateCount) {
+
+        if (stateCount > reachedIn.length) {
+            reachedIn = new int[stateCount];
+            closedIn = new int[stateCount];
+            costs = new double[stateCount];
+            parents = new int[stateCount];
+            heap = null;
+            radixHeap = null;
+            epoch = 0;
+        }
+
+        //stamps of the previous round would look current again once the counter wraps
+        if (epoch == Integer.MAX_VALUE) {
+            Arrays.fill(reachedIn, 0);
+            Arrays.fill(closedIn, 0);
+            epoch = 0;
+        }
+        epoch++;
+    }
+
+    public boolean isReached(int state) {
+        return reachedIn[state] == epoch;
+    }
+
+    /**
+     * @return cost of a reached state
+     */
+    public double getCost(int state) {
+        return costs[state];
+    }
+
+    public void reach(int state, double cost, int parent) {
+        reachedIn[state] = epoch;
+        costs[state] = cost;
+        parents[state] = parent;
+    }
+
+    public boolean isClosed(int state) {
+        return closedIn[state] == epoch;
+    }
+
+    public void close(int state) {
+        closedIn[state] = epoch;
+    }
+
+    public void reopen(int state) {
+        closedIn[state] = 0;
+    }
+
+    /**
+     * @return parent state of every state reached in this query, for following the path back
+     */
+    public int[] getParents() {
+        return parents;
+    }
+
+    /**
+     * Returns an empty open list, a radix heap if all keys are whole numbers that never drop
+     * below the last polled key, otherwise a binary heap.
+     *
+     * @param integralKeys whether the radix heap can be used
+     * @return open list with room for all states
+     */
+    public OpenList openList(boolean integralKeys) {
+        if (integralKeys) {
+            if (radixHeap == null) {
+                radixHeap = new RadixHeap(reachedIn.length);
+            }
+            radixHeap.clear();
+            return radixHeap;
+        }
+        return heap();
+    }
+
+    /**
+     * @return empty binary heap with room for all states
+     */
+    public IndexedMinHeap heap() {
+        if (heap == null) {
+            heap = new IndexedMinHeap(reachedIn.length);
+        }
+        heap.clear();
+        return heap;
+    }
+
+}
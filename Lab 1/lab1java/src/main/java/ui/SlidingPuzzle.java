@@ -0,0 +1,208 @@
+package ui;
+
+import java.io.IOException;
+import java.util.StringJoiner;
+
+/**
+ * Sliding tile puzzle with up to 16 cells, like the 8- and 15-puzzle. A state is packed
+ * into a long with 4 bits per cell, cell i in bits 4i to 4i + 3, and 0 for the blank.
+ * Every move slides a tile into the blank and costs 1.
+ * <p>
+ * Written as "puzzle:ROWSxCOLS:TILES[:GOAL]" with the tiles row by row separated by
+ * commas, e.g. "puzzle:3x3:8,1,3,4,0,2,7,6,5". Without a goal the tiles are expected in
+ * ascending order with the blank last.
+ */
+public class SlidingPuzzle implements StateSpace {
+
+    public static final String PREFIX = "puzzle:";
+
+    private final int rows;
+    private final int columns;
+    private final long initialState;
+    private final long goalState;
+    private final int[] goalCells;
+
+    public SlidingPuzzle(int rows, int columns, long initialState, long goalState) {
+        if (rows * columns > 16) {
+            throw new IllegalArgumentException("Puzzle has " + rows * columns + " cells, at most 16 fit into a state");
+        }
+        this.rows = rows;
+        this.columns = columns;
+        this.initialState = initialState;
+        this.goalState = goalState;
+        this.goalCells = new int[rows * columns];
+        for (int cell = 0; cell < rows * columns; cell++) {
+            goalCells[tile(goalState, cell)] = cell;
+        }
+    }
+
+    public static SlidingPuzzle parse(String spec) {
+
+        String[] parts = spec.substring(PREFIX.length()).split(":", -1);
+        if (parts.length < 2 || parts.length > 3) {
+            throw new IllegalArgumentException("Expected puzzle:ROWSxCOLS:TILES[:GOAL], got " + spec);
+        }
+        String[] size = parts[0].split("x");
+        int rows = Integer.parseInt(size[0]);
+        int columns = Integer.parseInt(size[1]);
+
+        long initialState = pack(parts[1], rows * columns);
+        long goalState;
+        if (parts.length > 2) {
+            goalState = pack(parts[2], rows * columns);
+        } else {
+            goalState = 0;
+            for (int cell = 0; cell < rows * columns - 1; cell++) {
+                goalState |= (long) (cell + 1) << (4 * cell);
+            }
+        }
+        return new SlidingPuzzle(rows, columns, initialState, goalState);
+    }
+
+    /**
+     * @throws IllegalArgumentException unless the tiles are every number from 0 to cells - 1
+     *                                  exactly once
+     */
+    private static long pack(String tiles, int cells) {
+        String[] values = tiles.split(",");
+        if (values.length != cells) {
+            throw new IllegalArgumentException("Expected " + cells + " tiles, got " + values.length + ": " + tiles);
+        }
+        long state = 0;
+        boolean[] seen = new boolean[cells];
+        for (int cell = 0; cell < cells; cell++) {
+            int tile = Integer.parseInt(values[cell].trim());
+            if (tile < 0 || tile >= cells) {
+                throw new IllegalArgumentException("Tile " + tile + " is not between 0 and " + (cells - 1) + ": " + tiles);
+            }
+            if (seen[tile]) {
+                throw new IllegalArgumentException("Tile " + tile + " appears more than once: " + tiles);
+            }
+            seen[tile] = true;
+            state |= (long) tile << (4 * cell);
+        }
+        return state;
+    }
+
+    static int tile(long state, int cell) {
+        return (int) (state >>> (4 * cell)) & 0xF;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public long getGoalState() {
+        return goalState;
+    }
+
+    @Override
+    public long getInitialState() {
+        return initialState;
+    }
+
+    @Override
+    public boolean isGoal(long state) {
+        return state == goalState;
+    }
+
+    @Override
+    public void successors(long state, Successors successors) {
+
+        successors.clear();
+        int blank = 0;
+        while (tile(state, blank) != 0) {
+            blank++;
+        }
+
+        int row = blank / columns;
+        int column = blank % columns;
+        if (row > 0) {
+            successors.add(slide(state, blank, blank - columns), 1);
+        }
+        if (column > 0) {
+            successors.add(slide(state, blank, blank - 1), 1);
+        }
+        if (column < columns - 1) {
+            successors.add(slide(state, blank, blank + 1), 1);
+        }
+        if (row < rows - 1) {
+            successors.add(slide(state, blank, blank + columns), 1);
+        }
+    }
+
+    //the blank is 0, so moving the tile is one add and one subtract
+    private static long slide(long state, int blank, int cell) {
+        long tile = tile(state, cell);
+        return state - (tile << (4 * cell)) + (tile << (4 * blank));
+    }
+
+    @Override
+    public String getName(long state) {
+        StringJoiner name = new StringJoiner("/");
+        for (int row = 0; row < rows; row++) {
+            StringJoiner rowTiles = new StringJoiner(",");
+            for (int column = 0; column < columns; column++) {
+                rowTiles.add(Integer.toString(tile(state, row * columns + column)));
+            }
+            name.add(rowTiles.toString());
+        }
+        return name.toString();
+    }
+
+    @Override
+    public int getStateCount() {
+        return -1;
+    }
+
+    //every move costs 1
+    @Override
+    public boolean hasIntegralCosts() {
+        return true;
+    }
+
+    //moving the tile back undoes a move
+    @Override
+    public boolean isReversible() {
+        return true;
+    }
+
+    /**
+     * @return sum of the Manhattan distances of all tiles to their goal cells
+     */
+    @Override
+    public Heuristic getHeuristics() {
+        return state -> {
+            int distance = 0;
+            for (int cell = 0; cell < rows * columns; cell++) {
+                int tile = tile(state, cell);
+                if (tile != 0) {
+                    distance += Math.abs(cell / columns - goalCells[tile] / columns)
+                            + Math.abs(cell % columns - goalCells[tile] % columns);
+                }
+            }
+            return distance;
+        };
+    }
+
+    /**
+     * @param spec "manhattan", "zero", or pattern databases with the "pdb:" prefix as
+     *             described in {@link PatternDatabase#open}
+     */
+    @Override
+    public Heuristic openHeuristics(String spec) throws IOException {
+        if (spec.equals("manhattan")) {
+            return getHeuristics();
+        } else if (spec.equals("zero")) {
+            return state -> 0;
+        } else if (spec.startsWith(PatternDatabase.PREFIX)) {
+            return PatternDatabase.open(spec, this);
+        }
+        throw new IllegalArgumentException("Unknown puzzle heuristic " + spec + ", expected manhattan, zero or pdb:");
+    }
+
+}
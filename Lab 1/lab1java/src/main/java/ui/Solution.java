@@ -1,6 +1,13 @@
 package ui;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 
 public class Solution {
 
@@ -9,8 +16,30 @@ public class Solution {
 		String alg = null;
 		String ss = null;
 		String h = null;
+		ArrayList<String> heuristics = new ArrayList<>();
+		String out = null;
 		boolean checkOptimistic = false;
 		boolean checkConsistent = false;
+		boolean serve = false;
+		int port = -1;
+		int cacheCapacity = 1024;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int nodeBudget = 1_000_000;
+		int landmarkCount = 16;
+		String hierarchy = null;
+		String pattern = null;
+		boolean additive = false;
+		double weight = 3.0;
+		long budgetMillis = -1;
+		String updates = null;
+		boolean summary = false;
+		int topCount = 10;
+		long memoryMegabytes = 256;
+		String tempDirectory = null;
+		boolean exhaustive = false;
+		boolean prune = false;
+		boolean stats = false;
+		String statsJson = null;
 
 		for (int i = 0; i < args.length; i++) {
 			String arg = args[i];
@@ -20,29 +49,136 @@ public class Solution {
 				ss = args[i + 1];
 			} else if (arg.equals("--h")) {
 				h = args[i + 1];
+				heuristics.add(h);
+			} else if (arg.equals("--out")) {
+				out = args[i + 1];
 			} else if (arg.equals("--check-optimistic")) {
 				checkOptimistic = true;
 			} else if (arg.equals("--check-consistent")) {
 				checkConsistent = true;
+			} else if (arg.equals("--serve")) {
+				serve = true;
+			} else if (arg.equals("--port")) {
+				port = Integer.parseInt(args[i + 1]);
+			} else if (arg.equals("--cache")) {
+				cacheCapacity = Integer.parseInt(args[i + 1]);
+			} else if (arg.equals("--threads")) {
+				threads = Integer.parseInt(args[i + 1]);
+			} else if (arg.equals("--node-budget")) {
+				nodeBudget = Integer.parseInt(args[i + 1]);
+			} else if (arg.equals("--landmarks")) {
+				landmarkCount = Integer.parseInt(args[i + 1]);
+			} else if (arg.equals("--ch")) {
+				hierarchy = args[i + 1];
+			} else if (arg.equals("--pattern")) {
+				pattern = args[i + 1];
+			} else if (arg.equals("--additive")) {
+				additive = true;
+			} else if (arg.equals("--weight")) {
+				weight = Double.parseDouble(args[i + 1]);
+			} else if (arg.equals("--budget-ms")) {
+				budgetMillis = Long.parseLong(args[i + 1]);
+			} else if (arg.equals("--updates")) {
+				updates = args[i + 1];
+			} else if (arg.equals("--summary")) {
+				summary = true;
+			} else if (arg.equals("--top")) {
+				topCount = Integer.parseInt(args[i + 1]);
+			} else if (arg.equals("--memory-mb")) {
+				memoryMegabytes = Long.parseLong(args[i + 1]);
+			} else if (arg.equals("--tmp")) {
+				tempDirectory = args[i + 1];
+			} else if (arg.equals("--exhaustive")) {
+				exhaustive = true;
+			} else if (arg.equals("--prune")) {
+				prune = true;
+			} else if (arg.equals("--stats")) {
+				stats = true;
+			} else if (arg.equals("--stats-json")) {
+				statsJson = args[i + 1];
 			}
 		}
 
-		if (alg != null && alg.equals("bfs")) {
-			BFS bfs = new BFS();
-			bfs.runAlgorithm(ss);
+		//only the single searches of bfs, ucs and astar collect counters
+		boolean keepStats = stats || statsJson != null;
+		boolean command = args.length > 0 && Arrays.asList("compile", "landmarks", "contract", "pdb").contains(args[0]);
+		boolean countedSearch = !command && !serve && alg != null
+				&& (alg.equals("bfs") || alg.equals("ucs") || (alg.equals("astar") && heuristics.size() <= 1));
+		if (keepStats && !countedSearch) {
+			throw new IllegalArgumentException("--stats and --stats-json are only supported for --alg bfs, ucs"
+					+ " and astar with at most one --h");
+		}
+
+		SearchResult result = null;
+		if (args.length > 0 && args[0].equals("compile")) {
+			StateGraph graph = StateGraph.parse(ss, threads);
+			StateSnapshot.write(graph, h != null ? graph.loadHeuristics(h) : null, out);
+		} else if (args.length > 0 && args[0].equals("landmarks")) {
+			Landmarks.build(StateGraph.load(ss), landmarkCount, out);
+		} else if (args.length > 0 && args[0].equals("contract")) {
+			ContractionHierarchy.build(StateGraph.load(ss), out);
+		} else if (args.length > 0 && args[0].equals("pdb")) {
+			int[] tiles = Arrays.stream(pattern.split(",")).mapToInt(Integer::parseInt).toArray();
+			PatternDatabase.build(SlidingPuzzle.parse(ss), tiles, additive, out);
+		} else if (serve) {
+			QueryServer server = new QueryServer(StateGraph.load(ss), ss, h, cacheCapacity, prune);
+			if (port >= 0) {
+				server.serve(port);
+			} else {
+				server.serve(new BufferedReader(new InputStreamReader(System.in)), new PrintWriter(System.out));
+			}
+		} else if (alg != null && alg.equals("bfs")) {
+			BFS bfs = new BFS(prune, keepStats);
+			result = bfs.runAlgorithm(ss);
+		} else if (alg != null && alg.equals("pbfs")) {
+			ParallelBFS pbfs = new ParallelBFS(threads);
+			pbfs.runAlgorithm(ss);
+		} else if (alg != null && alg.equals("ebfs")) {
+			ExternalBFS ebfs = new ExternalBFS(memoryMegabytes << 20, tempDirectory, exhaustive);
+			ebfs.runAlgorithm(ss);
 		} else if (alg != null && alg.equals("ucs")) {
-			UCS ucs = new UCS();
-			ucs.runAlgorithm(ss);
+			UCS ucs = new UCS(prune, keepStats);
+			result = ucs.runAlgorithm(ss);
+		} else if (alg != null && alg.equals("bucs")) {
+			BidirectionalUCS bucs = new BidirectionalUCS();
+			bucs.runAlgorithm(ss);
+		} else if (alg != null && alg.equals("ch")) {
+			ContractionHierarchy.runAlgorithm(ss, hierarchy);
+		} else if (alg != null && alg.equals("astar") && heuristics.size() > 1) {
+			ASTAR astar = new ASTAR(prune);
+			astar.runComparison(ss, heuristics, threads);
 		} else if (alg != null && alg.equals("astar")) {
-			ASTAR astar = new ASTAR();
-			astar.runAlgorithm(ss, h);
+			ASTAR astar = new ASTAR(prune, keepStats);
+			result = astar.runAlgorithm(ss, h);
+		} else if (alg != null && alg.equals("arastar")) {
+			ARASTAR arastar = new ARASTAR(weight, budgetMillis);
+			arastar.runAlgorithm(ss, h);
+		} else if (alg != null && alg.equals("lpastar")) {
+			LPASTAR.runAlgorithm(ss, h, updates);
+		} else if (alg != null && alg.equals("hdastar")) {
+			ParallelASTAR hdastar = new ParallelASTAR(threads);
+			hdastar.runAlgorithm(ss, h);
+		} else if (alg != null && alg.equals("idastar")) {
+			IDASTAR idastar = new IDASTAR();
+			idastar.runAlgorithm(ss, h);
+		} else if (alg != null && alg.equals("smastar")) {
+			SMASTAR smastar = new SMASTAR(nodeBudget);
+			smastar.runAlgorithm(ss, h);
 		} else if (checkOptimistic) {
-			HeuristicValidator hv = new HeuristicValidator();
+			HeuristicValidator hv = new HeuristicValidator(threads, summary, topCount);
 			hv.checkOptimism(ss, h);
 		} else if (checkConsistent) {
-			HeuristicValidator hv = new HeuristicValidator();
+			HeuristicValidator hv = new HeuristicValidator(threads, summary, topCount);
 			hv.checkConsistency(ss, h);
 		}
+
+		//counters of the single search algorithms that collect them
+		if (result != null && stats) {
+			System.out.println(result.getStats().format());
+		}
+		if (result != null && statsJson != null) {
+			Files.writeString(Path.of(statsJson), result.getStats().toJson(ss, result) + System.lineSeparator());
+		}
 	}
 
 }
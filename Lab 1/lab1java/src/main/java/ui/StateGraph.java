@@ -0,0 +1,475 @@
+package ui;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * State space stored as a compressed sparse row graph.
+ * <p>
+ * State names are interned once into dense int ids. Ids are assigned in alphabetical
+ * order of the names, so comparing two ids gives the same result as comparing the
+ * names, and every row of the adjacency is sorted by target id. The arrays are held as
+ * buffers so a graph can live on the heap or in a memory-mapped snapshot. As a
+ * {@link StateSpace} the states are the ids.
+ */
+public class StateGraph implements StateSpace {
+
+    private final StateNames stateNames;
+    private final IntColumn edgeOffsets;
+    private final IntColumn edgeTargets;
+    private final DoubleColumn edgeCosts;
+    private final int startState;
+    private final BitSet goalStates;
+    private final HeuristicTable heuristics;
+    private StateGraph reversed;
+    private Boolean integralCosts;
+    private Boolean reversible;
+    private BitSet goalReachable;
+
+    StateGraph(StateNames stateNames, IntColumn edgeOffsets, IntColumn edgeTargets, DoubleColumn edgeCosts,
+               int startState, BitSet goalStates, HeuristicTable heuristics) {
+        this.stateNames = stateNames;
+        this.edgeOffsets = edgeOffsets;
+        this.edgeTargets = edgeTargets;
+        this.edgeCosts = edgeCosts;
+        this.startState = startState;
+        this.goalStates = goalStates;
+        this.heuristics = heuristics;
+    }
+
+    @Override
+    public int getStateCount() {
+        return stateNames.size();
+    }
+
+    public int getEdgeCount() {
+        return edgeTargets.size();
+    }
+
+    public int getStartState() {
+        return startState;
+    }
+
+    public BitSet getGoalStates() {
+        return goalStates;
+    }
+
+    public boolean isGoalState(int state) {
+        return goalStates.get(state);
+    }
+
+    @Override
+    public long getInitialState() {
+        return startState;
+    }
+
+    @Override
+    public boolean isGoal(long state) {
+        return goalStates.get((int) state);
+    }
+
+    @Override
+    public void successors(long state, Successors successors) {
+        successors.clear();
+        for (int edge = getEdgesBegin((int) state); edge < getEdgesEnd((int) state); edge++) {
+            successors.add(edgeTargets.get(edge), edgeCosts.get(edge));
+        }
+    }
+
+    public StateNames getStateNames() {
+        return stateNames;
+    }
+
+    public String getStateName(int state) {
+        return stateNames.getName(state);
+    }
+
+    @Override
+    public String getName(long state) {
+        return stateNames.getName((int) state);
+    }
+
+    /**
+     * @param name state name
+     * @return id of the state, or -1 if the state space has no state with that name
+     */
+    public int getStateId(String name) {
+        return stateNames.getId(name);
+    }
+
+    public int getEdgesBegin(int state) {
+        return edgeOffsets.get(state);
+    }
+
+    public int getEdgesEnd(int state) {
+        return edgeOffsets.get(state + 1);
+    }
+
+    public int getEdgeTarget(int edge) {
+        return edgeTargets.get(edge);
+    }
+
+    public double getEdgeCost(int edge) {
+        return edgeCosts.get(edge);
+    }
+
+    /**
+     * @return heuristic stored with the state space, or null if it was loaded without one
+     */
+    @Override
+    public HeuristicTable getHeuristics() {
+        return heuristics;
+    }
+
+    /**
+     * Checks the edge costs on the first call. Costs up to 2^31 are accepted, so that sums
+     * along any path stay exact in a double.
+     */
+    @Override
+    public synchronized boolean hasIntegralCosts() {
+
+        if (integralCosts == null) {
+            boolean integral = true;
+            for (int edge = 0; edge < getEdgeCount() && integral; edge++) {
+                double cost = edgeCosts.get(edge);
+                integral = cost >= 0 && cost <= Integer.MAX_VALUE && cost == Math.rint(cost);
+            }
+            integralCosts = integral;
+        }
+        return integralCosts;
+    }
+
+    /**
+     * Looks up the reverse of every edge on the first call, by binary search in the sorted
+     * row of its target.
+     */
+    @Override
+    public synchronized boolean isReversible() {
+
+        if (reversible == null) {
+            boolean everyEdgeReversed = true;
+            for (int state = 0; state < getStateCount() && everyEdgeReversed; state++) {
+                for (int edge = getEdgesBegin(state); edge < getEdgesEnd(state) && everyEdgeReversed; edge++) {
+                    everyEdgeReversed = hasEdge(getEdgeTarget(edge), state);
+                }
+            }
+            reversible = everyEdgeReversed;
+        }
+        return reversible;
+    }
+
+    private boolean hasEdge(int source, int target) {
+        int low = getEdgesBegin(source);
+        int high = getEdgesEnd(source) - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int middleTarget = getEdgeTarget(middle);
+            if (middleTarget == target) {
+                return true;
+            } else if (middleTarget < target) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the states from which a goal state can be reached. It is read from a snapshot
+     * that stores it, otherwise found on the first call by a breadth first search over the
+     * reversed edges from all goal states.
+     *
+     * @return bitmap of the states that can reach a goal state
+     */
+    public synchronized BitSet getGoalReachable() {
+
+        if (goalReachable == null) {
+            StateGraph reversedGraph = reversed();
+            BitSet reached = (BitSet) goalStates.clone();
+            int[] queue = new int[getStateCount()];
+            int head = 0;
+            int tail = 0;
+            for (int goal = goalStates.nextSetBit(0); goal >= 0; goal = goalStates.nextSetBit(goal + 1)) {
+                queue[tail++] = goal;
+            }
+            while (head < tail) {
+                int state = queue[head++];
+                for (int edge = reversedGraph.getEdgesBegin(state); edge < reversedGraph.getEdgesEnd(state); edge++) {
+                    int predecessor = reversedGraph.getEdgeTarget(edge);
+                    if (!reached.get(predecessor)) {
+                        reached.set(predecessor);
+                        queue[tail++] = predecessor;
+                    }
+                }
+            }
+            goalReachable = reached;
+        }
+        return goalReachable;
+    }
+
+    /**
+     * @param goalStates goal states of a search
+     * @return the states that can reach a goal state if the goal states are those of this
+     *         graph, otherwise null, as the bitmap is only kept for those
+     */
+    public BitSet getGoalReachable(BitSet goalStates) {
+        return goalStates.equals(this.goalStates) ? getGoalReachable() : null;
+    }
+
+    void setGoalReachable(BitSet goalReachable) {
+        this.goalReachable = goalReachable;
+    }
+
+    /**
+     * Returns a view of this graph that shares everything but the start and goal states.
+     *
+     * @param startState start state of the view
+     * @param goalStates goal states of the view
+     * @return graph with the given start and goal states
+     */
+    public StateGraph withEndpoints(int startState, BitSet goalStates) {
+        if (startState == this.startState && goalStates == this.goalStates) {
+            return this;
+        }
+        StateGraph view = new StateGraph(stateNames, edgeOffsets, edgeTargets, edgeCosts, startState, goalStates,
+                heuristics);
+        view.integralCosts = integralCosts;
+        view.reversible = reversible;
+        if (goalStates.equals(this.goalStates)) {
+            view.goalReachable = goalReachable;
+        }
+        return view;
+    }
+
+    /**
+     * Returns the graph with every edge reversed. Names, start and goal states are shared
+     * with this graph and the rows stay sorted by id. The reversed graph is built on the
+     * first call and kept for later ones.
+     *
+     * @return reversed graph
+     */
+    public synchronized StateGraph reversed() {
+
+        if (reversed == null) {
+            reversed = buildReversed();
+            reversed.reversed = this;
+            reversed.integralCosts = integralCosts;
+            reversed.reversible = reversible;
+        }
+        return reversed;
+    }
+
+    private StateGraph buildReversed() {
+
+        int[] reversedOffsets = new int[getStateCount() + 1];
+        for (int edge = 0; edge < getEdgeCount(); edge++) {
+            reversedOffsets[edgeTargets.get(edge) + 1]++;
+        }
+        for (int state = 0; state < getStateCount(); state++) {
+            reversedOffsets[state + 1] += reversedOffsets[state];
+        }
+
+        int[] reversedTargets = new int[getEdgeCount()];
+        double[] reversedCosts = new double[getEdgeCount()];
+        int[] next = Arrays.copyOf(reversedOffsets, getStateCount());
+        for (int state = 0; state < getStateCount(); state++) {
+            for (int edge = getEdgesBegin(state); edge < getEdgesEnd(state); edge++) {
+                int reversedEdge = next[edgeTargets.get(edge)]++;
+                reversedTargets[reversedEdge] = state;
+                reversedCosts[reversedEdge] = edgeCosts.get(edge);
+            }
+        }
+
+        return new StateGraph(stateNames, IntColumn.wrap(reversedOffsets), IntColumn.wrap(reversedTargets),
+                DoubleColumn.wrap(reversedCosts), startState, goalStates, heuristics);
+    }
+
+    /**
+     * Opens a heuristic towards the goal states of this graph: the ALT heuristic for an
+     * "alt:" landmark file built by {@link Landmarks#build}, otherwise a heuristic file.
+     *
+     * @param spec heuristic file, or landmark file with the "alt:" prefix
+     * @return opened heuristic
+     * @throws IOException if reading the file fails
+     */
+    @Override
+    public Heuristic openHeuristics(String spec) throws IOException {
+        if (spec.startsWith(Landmarks.PREFIX)) {
+            return Landmarks.map(spec.substring(Landmarks.PREFIX.length()), this).towards(goalStates);
+        }
+        return loadHeuristics(spec);
+    }
+
+    /**
+     * Reads a heuristic file into a table indexed by state id. States missing from the
+     * file get 0, names that are not states of this graph are ignored.
+     *
+     * @param filePath path to the heuristic file
+     * @return heuristic value of every state
+     * @throws IOException if reading the file fails
+     */
+    public HeuristicTable loadHeuristics(String filePath) throws IOException {
+
+        double[] values = new double[getStateCount()];
+        BufferedReader reader = new BufferedReader(new FileReader(filePath));
+
+        String line = reader.readLine();
+        while (line != null) {
+            if (!line.isBlank() && !line.startsWith("#")) {
+                int separator = line.indexOf(": ");
+                int state = getStateId(line.substring(0, separator));
+                if (state >= 0) {
+                    values[state] = Double.parseDouble(line.substring(separator + 2).trim());
+                }
+            }
+            line = reader.readLine();
+        }
+
+        reader.close();
+        return new HeuristicTable(DoubleColumn.wrap(values));
+    }
+
+    /**
+     * Loads a state space, either by memory-mapping a snapshot written by
+     * {@link StateSnapshot#write} or by parsing the text format. The load is recorded as a
+     * ui.StateSpaceLoad event.
+     *
+     * @param filePath path to the state space file or snapshot
+     * @return loaded graph
+     * @throws IOException if reading the file fails
+     */
+    public static StateGraph load(String filePath) throws IOException {
+
+        SearchStats.LoadEvent event = new SearchStats.LoadEvent();
+        event.begin();
+
+        DataInputStream in = new DataInputStream(new FileInputStream(filePath));
+        byte[] magic = new byte[StateSnapshot.MAGIC.length];
+        int read = in.read(magic);
+        in.close();
+
+        boolean snapshot = read == magic.length && Arrays.equals(magic, StateSnapshot.MAGIC);
+        StateGraph graph = snapshot ? StateSnapshot.map(filePath) : parse(filePath);
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.stateSpace = filePath;
+            event.snapshot = snapshot;
+            event.states = graph.getStateCount();
+            event.edges = graph.getEdgeCount();
+            event.commit();
+        }
+        return graph;
+    }
+
+    /**
+     * Parses a state space file on as many threads as there are processors.
+     *
+     * @param filePath path to the state space file
+     * @return loaded graph
+     * @throws IOException if reading the file fails
+     */
+    public static StateGraph parse(String filePath) throws IOException {
+        return parse(filePath, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Parses a state space file with {@link ParallelParser}. Edges are collected against
+     * provisional ids, then the ids are renumbered alphabetically and the edges are
+     * bucketed into rows.
+     *
+     * @param filePath path to the state space file
+     * @param threads number of threads that scan the file
+     * @return loaded graph
+     * @throws IOException if reading the file fails
+     */
+    public static StateGraph parse(String filePath, int threads) throws IOException {
+        return new ParallelParser(threads).parse(filePath);
+    }
+
+    /**
+     * Renumbers provisional ids into name order and buckets the edges into rows.
+     *
+     * @param encodedNames names indexed by provisional id
+     * @param sources source of every edge, as provisional id
+     * @param targets target of every edge, as provisional id
+     * @param costs cost of every edge
+     * @param edgeCount number of used entries in the edge arrays
+     * @param startState provisional id of the start state
+     * @param goalStates provisional ids of the goal states
+     * @return built graph
+     */
+    static StateGraph build(byte[][] encodedNames, int[] sources, int[] targets, double[] costs, int edgeCount,
+                            int startState, int[] goalStates) {
+
+        int stateCount = encodedNames.length;
+        int[] order = StateNames.sortOrder(encodedNames);
+        byte[][] sortedNames = new byte[stateCount][];
+        int[] renumbered = new int[stateCount];
+        for (int id = 0; id < stateCount; id++) {
+            sortedNames[id] = encodedNames[order[id]];
+            renumbered[order[id]] = id;
+        }
+
+        int[] edgeOffsets = new int[stateCount + 1];
+        for (int i = 0; i < edgeCount; i++) {
+            edgeOffsets[renumbered[sources[i]] + 1]++;
+        }
+        for (int state = 0; state < stateCount; state++) {
+            edgeOffsets[state + 1] += edgeOffsets[state];
+        }
+
+        int[] edgeTargets = new int[edgeCount];
+        double[] edgeCosts = new double[edgeCount];
+        int[] next = Arrays.copyOf(edgeOffsets, stateCount);
+        for (int i = 0; i < edgeCount; i++) {
+            int edge = next[renumbered[sources[i]]]++;
+            edgeTargets[edge] = renumbered[targets[i]];
+            edgeCosts[edge] = costs[i];
+        }
+
+        for (int state = 0; state < stateCount; state++) {
+            sortRow(edgeTargets, edgeCosts, edgeOffsets[state], edgeOffsets[state + 1]);
+        }
+
+        BitSet goalStateSet = new BitSet(stateCount);
+        for (int goalState : goalStates) {
+            goalStateSet.set(renumbered[goalState]);
+        }
+
+        return new StateGraph(StateNames.of(sortedNames), IntColumn.wrap(edgeOffsets), IntColumn.wrap(edgeTargets),
+                DoubleColumn.wrap(edgeCosts), renumbered[startState], goalStateSet, null);
+    }
+
+    private static void sortRow(int[] targets, double[] costs, int begin, int end) {
+
+        boolean sorted = true;
+        for (int edge = begin + 1; edge < end && sorted; edge++) {
+            sorted = targets[edge - 1] <= targets[edge];
+        }
+        if (sorted) {
+            return;
+        }
+
+        //target in the high half keeps equal targets in file order
+        long[] keys = new long[end - begin];
+        for (int edge = begin; edge < end; edge++) {
+            keys[edge - begin] = ((long) targets[edge] << 32) | (edge - begin);
+        }
+        Arrays.sort(keys);
+
+        int[] rowTargets = Arrays.copyOfRange(targets, begin, end);
+        double[] rowCosts = Arrays.copyOfRange(costs, begin, end);
+        for (int i = 0; i < keys.length; i++) {
+            int from = (int) keys[i];
+            targets[begin + i] = rowTargets[from];
+            costs[begin + i] = rowCosts[from];
+        }
+    }
+
+}
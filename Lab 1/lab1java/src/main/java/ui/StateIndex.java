@@ -0,0 +1,89 @@
+package ui;
+
+import java.util.Arrays;
+
+/**
+ * Numbers the states a search reaches with dense slots, so the search can keep its
+ * bookkeeping in arrays. States of an explicit graph already are dense ids and are their
+ * own slots, other states get slots in order of discovery from an open addressing table.
+ */
+public class StateIndex {
+
+    private final int stateCount;
+    private int[] table;
+    private long[] states;
+    private int size;
+
+    private StateIndex(int stateCount) {
+        this.stateCount = stateCount;
+        if (stateCount < 0) {
+            this.table = new int[1 << 12];
+            this.states = new long[1 << 10];
+        }
+    }
+
+    public static StateIndex of(StateSpace space) {
+        return new StateIndex(space.getStateCount());
+    }
+
+    /**
+     * @return number of slots the arrays of a search need before the next slot is handed out
+     */
+    public int capacity() {
+        return stateCount >= 0 ? stateCount : states.length;
+    }
+
+    /**
+     * @param state state to look up
+     * @return slot of the state, a new one if the state was not seen before
+     */
+    public int add(long state) {
+
+        if (stateCount >= 0) {
+            return (int) state;
+        }
+
+        int mask = table.length - 1;
+        int index = hash(state) & mask;
+        while (table[index] != 0) {
+            if (states[table[index] - 1] == state) {
+                return table[index] - 1;
+            }
+            index = (index + 1) & mask;
+        }
+
+        if (size == states.length) {
+            states = Arrays.copyOf(states, size * 2);
+        }
+        states[size] = state;
+        table[index] = ++size;
+
+        //keep the table at most half full
+        if (size * 2 > table.length) {
+            rehash();
+        }
+        return size - 1;
+    }
+
+    public long getState(int slot) {
+        return stateCount >= 0 ? slot : states[slot];
+    }
+
+    private void rehash() {
+        table = new int[table.length * 2];
+        int mask = table.length - 1;
+        for (int slot = 0; slot < size; slot++) {
+            int index = hash(states[slot]) & mask;
+            while (table[index] != 0) {
+                index = (index + 1) & mask;
+            }
+            table[index] = slot + 1;
+        }
+    }
+
+    private static int hash(long state) {
+        long mixed = state * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ (mixed >>> 32));
+    }
+
+}
@@ -0,0 +1,230 @@
+package ui;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Sorted table of UTF-8 encoded state names, where the id of a name is its rank.
+ * <p>
+ * Names are ordered by their unsigned bytes, which is code point order and matches
+ * String.compareTo for everything but characters above U+FFFF. The table only holds
+ * buffers, so it works the same on heap arrays and on a memory-mapped snapshot.
+ * <p>
+ * The names are front coded in blocks of {@link #BLOCK_SIZE}. The first name of a block
+ * is stored whole as its length and bytes, every following one as the length of the
+ * prefix it shares with the name before it, the length of the rest and the rest, all
+ * lengths as varints. Sorted structured names share long prefixes, so a name mostly costs
+ * its last few bytes. A lookup binary searches the first names of the blocks and then
+ * decodes one block.
+ */
+public class StateNames {
+
+    public static final int BLOCK_SIZE = 16;
+
+    private final int size;
+    private final IntBuffer blockOffsets;
+    private final ByteBuffer bytes;
+
+    /**
+     * @param size number of names
+     * @param blockOffsets offset of every block in bytes, followed by the length of bytes
+     * @param bytes front coded blocks
+     */
+    public StateNames(int size, IntBuffer blockOffsets, ByteBuffer bytes) {
+        this.size = size;
+        this.blockOffsets = blockOffsets;
+        this.bytes = bytes;
+    }
+
+    /**
+     * @param sortedNames encoded names, already sorted with Arrays.compareUnsigned
+     * @return table holding the names in the given order
+     */
+    public static StateNames of(byte[][] sortedNames) {
+
+        int[] blockOffsets = new int[blockCount(sortedNames.length) + 1];
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        for (int id = 0; id < sortedNames.length; id++) {
+            byte[] name = sortedNames[id];
+            if (id % BLOCK_SIZE == 0) {
+                blockOffsets[id / BLOCK_SIZE] = out.size();
+                writeVarint(out, name.length);
+                out.write(name, 0, name.length);
+            } else {
+                byte[] previous = sortedNames[id - 1];
+                int shared = Arrays.mismatch(previous, name);
+                shared = shared < 0 ? name.length : Math.min(shared, name.length);
+                writeVarint(out, shared);
+                writeVarint(out, name.length - shared);
+                out.write(name, shared, name.length - shared);
+            }
+        }
+        blockOffsets[blockOffsets.length - 1] = out.size();
+
+        return new StateNames(sortedNames.length, IntBuffer.wrap(blockOffsets), ByteBuffer.wrap(out.toByteArray()));
+    }
+
+    public static byte[] encode(String name) {
+        return name.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static int blockCount(int size) {
+        return (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public IntBuffer getBlockOffsets() {
+        return blockOffsets.duplicate();
+    }
+
+    public ByteBuffer getBytes() {
+        return bytes.duplicate();
+    }
+
+    public String getName(int id) {
+        Cursor cursor = new Cursor(id / BLOCK_SIZE);
+        for (int i = id % BLOCK_SIZE; i > 0; i--) {
+            cursor.next();
+        }
+        return new String(cursor.name, 0, cursor.length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param name state name
+     * @return id of the name, or -1 if the table does not contain it
+     */
+    public int getId(String name) {
+
+        byte[] key = encode(name);
+
+        //last block whose first name is not after the key
+        int low = 0;
+        int high = blockCount(size) - 1;
+        int block = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (compareFirstName(middle, key) <= 0) {
+                block = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        if (block < 0) {
+            return -1;
+        }
+
+        Cursor cursor = new Cursor(block);
+        int id = block * BLOCK_SIZE;
+        while (true) {
+            int comparison = Arrays.compareUnsigned(cursor.name, 0, cursor.length, key, 0, key.length);
+            if (comparison == 0) {
+                return id;
+            } else if (comparison > 0 || ++id == Math.min(size, (block + 1) * BLOCK_SIZE)) {
+                return -1;
+            }
+            cursor.next();
+        }
+    }
+
+    /**
+     * Compares the first name of a block with a key in place, without decoding it.
+     */
+    private int compareFirstName(int block, byte[] key) {
+
+        int position = blockOffsets.get(block);
+        int length = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = bytes.get(position++);
+            length |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                break;
+            }
+        }
+
+        int common = Math.min(length, key.length);
+        for (int i = 0; i < common; i++) {
+            int comparison = Byte.compareUnsigned(bytes.get(position + i), key[i]);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return Integer.compare(length, key.length);
+    }
+
+    /**
+     * Decodes the names of one block in order, each into the bytes of the one before it.
+     */
+    private class Cursor {
+        private int position;
+        private byte[] name;
+        private int length;
+
+        Cursor(int block) {
+            position = blockOffsets.get(block);
+            length = readVarint();
+            name = new byte[Math.max(16, length)];
+            bytes.get(position, name, 0, length);
+            position += length;
+        }
+
+        void next() {
+            int shared = readVarint();
+            int suffix = readVarint();
+            length = shared + suffix;
+            if (length > name.length) {
+                name = Arrays.copyOf(name, Math.max(length, 2 * name.length));
+            }
+            bytes.get(position, name, shared, suffix);
+            position += suffix;
+        }
+
+        private int readVarint() {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = bytes.get(position++);
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /**
+     * Sorts encoded names into table order.
+     *
+     * @param names encoded names
+     * @return indices into names in table order
+     */
+    public static int[] sortOrder(byte[][] names) {
+
+        Integer[] order = new Integer[names.length];
+        for (int i = 0; i < names.length; i++) {
+            order[i] = i;
+        }
+        Arrays.parallelSort(order, (first, second) -> Arrays.compareUnsigned(names[first], names[second]));
+
+        int[] sorted = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            sorted[i] = order[i];
+        }
+        return sorted;
+    }
+
+}
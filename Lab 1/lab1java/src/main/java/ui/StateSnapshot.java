@@ -0,0 +1,300 @@
+package ui;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+
+/**
+ * Binary state space snapshot that is memory-mapped instead of parsed.
+ * <p>
+ * Layout, little-endian: the magic bytes, a header of version, state count, edge count,
+ * start state, flags and name table size, followed by the sections name block offsets,
+ * front coded name bytes as laid out by {@link StateNames}, edge offsets, edge targets,
+ * edge costs, goal bitset words and, if the flags say so, the heuristic column and the
+ * bitset words of the states that can reach a goal. Every section starts on an 8 byte
+ * boundary and is mapped on its own. A mapping holds less than 2 GB, so the edge, cost and
+ * heuristic sections are mapped in chunks of {@link #MAX_MAPPING_BYTES} when they are
+ * larger; the name bytes are addressed by int offsets and always fit into one.
+ */
+public class StateSnapshot {
+
+    public static final byte[] MAGIC = {'U', 'I', 'S', 'S'};
+    public static final int VERSION = 2;
+
+    static final long MAX_MAPPING_BYTES = 1L << 30;
+
+    private static final int HEADER_SIZE = 32;
+    private static final int FLAG_HEURISTICS = 1;
+    private static final int FLAG_GOAL_REACHABLE = 2;
+
+    /**
+     * Writes a snapshot of the graph, with the states that can reach a goal so that loading
+     * the snapshot does not have to search for them again.
+     *
+     * @param graph graph to write
+     * @param heuristics heuristic column to store with the graph, or null
+     * @param filePath path of the snapshot file
+     * @throws IOException if writing the file fails
+     */
+    public static void write(StateGraph graph, HeuristicTable heuristics, String filePath) throws IOException {
+
+        int stateCount = graph.getStateCount();
+        int edgeCount = graph.getEdgeCount();
+        StateNames stateNames = graph.getStateNames();
+
+        FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        SectionWriter writer = new SectionWriter(channel);
+
+        writer.putBytes(MAGIC);
+        writer.putInt(VERSION);
+        writer.putInt(stateCount);
+        writer.putInt(edgeCount);
+        writer.putInt(graph.getStartState());
+        writer.putInt((heuristics != null ? FLAG_HEURISTICS : 0) | FLAG_GOAL_REACHABLE);
+        writer.putLong(stateNames.getBytes().limit());
+
+        IntBuffer nameBlockOffsets = stateNames.getBlockOffsets();
+        for (int block = 0; block <= StateNames.blockCount(stateCount); block++) {
+            writer.putInt(nameBlockOffsets.get(block));
+        }
+        writer.align();
+        ByteBuffer nameBytes = stateNames.getBytes();
+        while (nameBytes.hasRemaining()) {
+            writer.putByte(nameBytes.get());
+        }
+        writer.align();
+
+        for (int state = 0; state < stateCount; state++) {
+            writer.putInt(graph.getEdgesBegin(state));
+        }
+        writer.putInt(edgeCount);
+        writer.align();
+        for (int edge = 0; edge < edgeCount; edge++) {
+            writer.putInt(graph.getEdgeTarget(edge));
+        }
+        writer.align();
+        for (int edge = 0; edge < edgeCount; edge++) {
+            writer.putDouble(graph.getEdgeCost(edge));
+        }
+
+        long[] goalWords = graph.getGoalStates().toLongArray();
+        for (int word = 0; word < goalWordCount(stateCount); word++) {
+            writer.putLong(word < goalWords.length ? goalWords[word] : 0L);
+        }
+
+        if (heuristics != null) {
+            for (int state = 0; state < stateCount; state++) {
+                writer.putDouble(heuristics.estimate(state));
+            }
+        }
+
+        long[] goalReachableWords = graph.getGoalReachable().toLongArray();
+        for (int word = 0; word < goalWordCount(stateCount); word++) {
+            writer.putLong(word < goalReachableWords.length ? goalReachableWords[word] : 0L);
+        }
+
+        writer.flush();
+        channel.close();
+    }
+
+    /**
+     * Memory-maps a snapshot. Only the header and the goal bitset are read eagerly.
+     *
+     * @param filePath path of the snapshot file
+     * @return graph backed by the mapped file
+     * @throws IOException if the file is not a snapshot of a supported version
+     */
+    public static StateGraph map(String filePath) throws IOException {
+        return map(filePath, MAX_MAPPING_BYTES);
+    }
+
+    /**
+     * @param maxMappingBytes largest mapping of a section, a power of two
+     */
+    static StateGraph map(String filePath, long maxMappingBytes) throws IOException {
+
+        FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ);
+
+        ByteBuffer header = map(channel, 0, HEADER_SIZE);
+        for (byte expected : MAGIC) {
+            if (header.get() != expected) {
+                channel.close();
+                throw new IOException(filePath + " is not a state space snapshot");
+            }
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            channel.close();
+            throw new IOException(filePath + " has snapshot version " + version + ", expected " + VERSION);
+        }
+        int stateCount = header.getInt();
+        int edgeCount = header.getInt();
+        int startState = header.getInt();
+        int flags = header.getInt();
+        long nameBytesLength = header.getLong();
+
+        long position = HEADER_SIZE;
+        int nameBlockCount = StateNames.blockCount(stateCount);
+        ByteBuffer nameBlockOffsets = map(channel, position, 4L * (nameBlockCount + 1));
+        position = align(position + 4L * (nameBlockCount + 1));
+        ByteBuffer nameBytes = map(channel, position, nameBytesLength);
+        position = align(position + nameBytesLength);
+        IntColumn edgeOffsets = mapInts(channel, position, stateCount + 1, maxMappingBytes);
+        position = align(position + 4L * (stateCount + 1));
+        IntColumn edgeTargets = mapInts(channel, position, edgeCount, maxMappingBytes);
+        position = align(position + 4L * edgeCount);
+        DoubleColumn edgeCosts = mapDoubles(channel, position, edgeCount, maxMappingBytes);
+        position += 8L * edgeCount;
+        ByteBuffer goalWords = map(channel, position, 8L * goalWordCount(stateCount));
+        position += 8L * goalWordCount(stateCount);
+
+        HeuristicTable heuristics = null;
+        if ((flags & FLAG_HEURISTICS) != 0) {
+            heuristics = new HeuristicTable(mapDoubles(channel, position, stateCount, maxMappingBytes));
+            position += 8L * stateCount;
+        }
+        BitSet goalReachable = null;
+        if ((flags & FLAG_GOAL_REACHABLE) != 0) {
+            goalReachable = BitSet.valueOf(map(channel, position, 8L * goalWordCount(stateCount)).asLongBuffer());
+        }
+        channel.close();
+
+        StateGraph graph = new StateGraph(new StateNames(stateCount, nameBlockOffsets.asIntBuffer(), nameBytes),
+                edgeOffsets, edgeTargets, edgeCosts, startState, BitSet.valueOf(goalWords.asLongBuffer()), heuristics);
+        graph.setGoalReachable(goalReachable);
+        return graph;
+    }
+
+    static ByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static IntColumn mapInts(FileChannel channel, long position, int count, long maxMappingBytes)
+            throws IOException {
+
+        int shift = chunkShift(count, Integer.BYTES, maxMappingBytes);
+        int chunkLength = (int) Math.min(count, 1L << shift);
+        IntBuffer[] chunks = new IntBuffer[chunkCount(count, shift)];
+        for (int chunk = 0; chunk < chunks.length; chunk++) {
+            long first = (long) chunk * chunkLength;
+            chunks[chunk] = map(channel, position + Integer.BYTES * first,
+                    Integer.BYTES * Math.min(chunkLength, count - first)).asIntBuffer();
+        }
+        return new IntColumn(chunks, shift, count);
+    }
+
+    private static DoubleColumn mapDoubles(FileChannel channel, long position, int count, long maxMappingBytes)
+            throws IOException {
+
+        int shift = chunkShift(count, Double.BYTES, maxMappingBytes);
+        int chunkLength = (int) Math.min(count, 1L << shift);
+        DoubleBuffer[] chunks = new DoubleBuffer[chunkCount(count, shift)];
+        for (int chunk = 0; chunk < chunks.length; chunk++) {
+            long first = (long) chunk * chunkLength;
+            chunks[chunk] = map(channel, position + Double.BYTES * first,
+                    Double.BYTES * Math.min(chunkLength, count - first)).asDoubleBuffer();
+        }
+        return new DoubleColumn(chunks, shift, count);
+    }
+
+    //31 keeps the whole section in one mapping, otherwise chunks of as many values as fit
+    private static int chunkShift(int count, int valueBytes, long maxMappingBytes) {
+        if ((long) count * valueBytes <= maxMappingBytes) {
+            return 31;
+        }
+        return 63 - Long.numberOfLeadingZeros(maxMappingBytes / valueBytes);
+    }
+
+    private static int chunkCount(int count, int shift) {
+        return Math.max(1, (int) ((count + (1L << shift) - 1) >>> shift));
+    }
+
+    static long align(long position) {
+        return (position + 7) & ~7L;
+    }
+
+    private static int goalWordCount(int stateCount) {
+        return (stateCount + 63) >>> 6;
+    }
+
+    /**
+     * Buffered little-endian writer that keeps track of the file position for alignment.
+     */
+    static class SectionWriter {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private long position;
+
+        public SectionWriter(FileChannel channel) {
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+            this.position = 0;
+        }
+
+        public void putByte(byte value) throws IOException {
+            ensureRemaining(1);
+            buffer.put(value);
+            position++;
+        }
+
+        public void putBytes(byte[] values) throws IOException {
+            for (byte value : values) {
+                putByte(value);
+            }
+        }
+
+        public void putInt(int value) throws IOException {
+            ensureRemaining(4);
+            buffer.putInt(value);
+            position += 4;
+        }
+
+        public void putLong(long value) throws IOException {
+            ensureRemaining(8);
+            buffer.putLong(value);
+            position += 8;
+        }
+
+        public void putFloat(float value) throws IOException {
+            ensureRemaining(4);
+            buffer.putFloat(value);
+            position += 4;
+        }
+
+        public void putDouble(double value) throws IOException {
+            ensureRemaining(8);
+            buffer.putDouble(value);
+            position += 8;
+        }
+
+        public void align() throws IOException {
+            while ((position & 7) != 0) {
+                putByte((byte) 0);
+            }
+        }
+
+        public void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void ensureRemaining(int size) throws IOException {
+            if (buffer.remaining() < size) {
+                flush();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,71 @@
+package ui;
+
+import java.io.IOException;
+
+/**
+ * State space that generates successors on demand. States are encoded as longs, either as
+ * the dense ids of an explicit graph or as a packed description of the state itself, so
+ * spaces far too large to list can be searched by the same algorithms.
+ */
+public interface StateSpace {
+
+    long getInitialState();
+
+    boolean isGoal(long state);
+
+    /**
+     * Writes the successors of a state, replacing the previous content of the buffer.
+     *
+     * @param state state to expand
+     * @param successors buffer the successor states and edge costs are written to
+     */
+    void successors(long state, Successors successors);
+
+    String getName(long state);
+
+    /**
+     * @return number of states if the states are the ids 0 to count - 1, otherwise -1
+     */
+    int getStateCount();
+
+    /**
+     * @return whether every edge cost is a non-negative whole number, so path costs can be
+     *         used as integral priorities
+     */
+    boolean hasIntegralCosts();
+
+    /**
+     * @return whether every successor of a state has that state among its own successors,
+     *         so a breadth first layer can only reach the layers next to it
+     */
+    boolean isReversible();
+
+    /**
+     * @return heuristic that comes with the state space, or null if there is none
+     */
+    Heuristic getHeuristics();
+
+    /**
+     * @param spec heuristic to use, a heuristic file or "alt:" landmark file for explicit graphs,
+     *             a name or "pdb:" pattern databases for puzzles
+     * @return opened heuristic
+     * @throws IOException if reading the heuristic fails
+     */
+    Heuristic openHeuristics(String spec) throws IOException;
+
+    /**
+     * Opens a state space: a sliding puzzle for a "puzzle:" spec, otherwise a state space
+     * file or snapshot.
+     *
+     * @param spec state space description or file path
+     * @return opened state space
+     * @throws IOException if reading the file fails
+     */
+    static StateSpace load(String spec) throws IOException {
+        if (spec.startsWith(SlidingPuzzle.PREFIX)) {
+            return SlidingPuzzle.parse(spec);
+        }
+        return StateGraph.load(spec);
+    }
+
+}
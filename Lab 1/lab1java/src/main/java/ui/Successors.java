@@ -0,0 +1,40 @@
+package ui;
+
+import java.util.Arrays;
+
+/**
+ * Reusable buffer for the successors of one state, so expanding a state does not allocate.
+ */
+public class Successors {
+
+    private long[] states = new long[16];
+    private double[] costs = new double[16];
+    private int size;
+
+    public void clear() {
+        size = 0;
+    }
+
+    public void add(long state, double cost) {
+        if (size == states.length) {
+            states = Arrays.copyOf(states, size * 2);
+            costs = Arrays.copyOf(costs, size * 2);
+        }
+        states[size] = state;
+        costs[size] = cost;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getState(int index) {
+        return states[index];
+    }
+
+    public double getCost(int index) {
+        return costs[index];
+    }
+
+}
@@ -1,267 +1,239 @@
 package ui;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.*;
 
 public class UCS {
 
-    private Node startNode;
-    private HashSet<String> goalStateNames;
-    private HashMap<Node, TreeSet<Node>> allStates;
-
-    private class Node implements Comparable<Node>{
-        private final String name;
-        private double cost;
-        private Node parent;
-        private TreeSet<Node> neighbours;
-
-        public Node(String name, double cost) {
-            this.name = name;
-            this.cost = cost;
-            this.parent = null;
-            this.neighbours = new TreeSet<>();
-        }
-
-        public String getName() {
-            return name;
-        }
-
-        public double getCost() {
-            return cost;
-        }
-
-        public void setCost(double cost) {
-            this.cost = cost;
-        }
+    private final boolean pruneDeadEnds;
+    private final boolean keepStats;
 
-        public void increaseCost(double cost) {
-            this.cost += cost;
-        }
-
-        public Node getParent() {
-            return parent;
-        }
-
-        public void setParent(Node parent) {
-            this.parent = parent;
-        }
+    public UCS() {
+        this(false);
+    }
 
-        public TreeSet<Node> getNeighbours() {
-            return neighbours;
-        }
+    /**
+     * @param pruneDeadEnds skip states that cannot reach a goal, for the goal states of the
+     *                      graph itself
+     */
+    public UCS(boolean pruneDeadEnds) {
+        this(pruneDeadEnds, false);
+    }
 
-        public void appendNeighbour(Node neighbour) {
-            this.neighbours.add(neighbour);
-        }
+    /**
+     * @param pruneDeadEnds skip states that cannot reach a goal, for the goal states of the
+     *                      graph itself
+     * @param keepStats attach the counters of every search to its result
+     */
+    public UCS(boolean pruneDeadEnds, boolean keepStats) {
+        this.pruneDeadEnds = pruneDeadEnds;
+        this.keepStats = keepStats;
+    }
 
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
-            Node node = (Node) o;
-            return name.equals(node.name);
-        }
+    public SearchResult runAlgorithm(String filePath) throws IOException {
 
-        @Override
-        public int hashCode() {
-            return Objects.hash(name);
+        long[] loadNanos = new long[1];
+        StateSpace space = SearchStats.load(filePath, loadNanos);
+        SearchResult result = search(space);
+        if (result.getStats() != null) {
+            result.getStats().setLoadNanos(loadNanos[0]);
         }
+        System.out.println(result.format("# UCS", space));
+        return result;
+    }
 
-        @Override
-        public int compareTo(Node other) {
-            if (this.cost == other.cost) {
-                return this.name.compareTo(other.name);
-            } else {
-                return Double.compare(this.cost, other.cost);
-            }
-        }
+    public double runAlgorithmFromState(String filePath, String startNodeName) throws IOException {
 
+        StateGraph graph = StateGraph.load(filePath);
+        SearchResult result = search(graph, graph.getStateId(startNodeName), graph.getGoalStates());
+        return result.isFoundSolution() ? result.getTotalCost() : -1.0;
     }
 
-    private void argumentsInit(String filePath) throws IOException {
-
-        BufferedReader reader = new BufferedReader(new FileReader(filePath));
+    /**
+     * Computes the true cost to the nearest goal state for every state with a single
+     * Dijkstra search over the reversed edges, started from all goal states at once.
+     *
+     * @param graph state space
+     * @return cost to goal indexed by state id, infinity for states that cannot reach a goal
+     */
+    public double[] runAlgorithmToGoals(StateGraph graph) {
+        return distancesFrom(graph.reversed(), graph.getGoalStates());
+    }
 
-        String line = reader.readLine();
-        while (line.startsWith("#")) {
-            line = reader.readLine();
-        }
+    /**
+     * Runs Dijkstra to completion from a set of source states.
+     *
+     * @param graph graph to search
+     * @param sources states that start with distance 0
+     * @return distance from the nearest source indexed by state id, infinity for states
+     *         that cannot be reached
+     */
+    public double[] distancesFrom(StateGraph graph, BitSet sources) {
 
-        String startNodeName = line;
+        double[] distances = new double[graph.getStateCount()];
+        Arrays.fill(distances, Double.POSITIVE_INFINITY);
 
-        line = reader.readLine();
-        while (line.startsWith("#")) {
-            line = reader.readLine();
+        OpenList open = openList(graph, graph.getStateCount());
+        for (int source = sources.nextSetBit(0); source >= 0; source = sources.nextSetBit(source + 1)) {
+            distances[source] = 0;
+            open.insert(source, 0);
         }
 
-        String[] goalStateNames = line.split(" ");
-        this.goalStateNames = new HashSet<>();
-        this.goalStateNames.addAll(Arrays.asList(goalStateNames));
-
-        allStates = new HashMap<>();
-
-        line = reader.readLine();
-        while (line != null) {
-            if(line.startsWith("#")){
-                line = reader.readLine();
-            }
-            String[] stateAndNeighbours = line.split(": ");
-
-            if(stateAndNeighbours.length == 1) {
-                stateAndNeighbours[0] = stateAndNeighbours[0].substring(0, stateAndNeighbours[0].length() - 1);
-            }
+        while (!open.isEmpty()) {
+            int currentState = open.poll();
 
-            Node newNode = new Node(stateAndNeighbours[0], 0);
+            for (int edge = graph.getEdgesBegin(currentState); edge < graph.getEdgesEnd(currentState); edge++) {
 
-            if(stateAndNeighbours.length > 1) {
-                String neighboursUnsplit = stateAndNeighbours[1];
-                String[] neighbours = neighboursUnsplit.split(" ");
-
-                for (String neighbour : neighbours) {
-                    String[] nameAndCost = neighbour.split(",");
-                    String name = nameAndCost[0];
-                    double cost = Double.parseDouble(nameAndCost[1]);
-
-                    Node neigbourNode = new Node(name, cost);
-                    newNode.appendNeighbour(neigbourNode);
-                }
-            }
+                int neighbour = graph.getEdgeTarget(edge);
+                double cost = distances[currentState] + graph.getEdgeCost(edge);
+                if (cost >= distances[neighbour])
+                    continue;
 
-            allStates.put(newNode, newNode.getNeighbours());
-            if(newNode.getName().equals(startNodeName)) {
-                startNode = new Node(newNode.getName(), newNode.getCost());
-                for(Node neighbour : newNode.getNeighbours()) {
-                    startNode.appendNeighbour(neighbour);
+                if (open.contains(neighbour)) {
+                    open.decreaseKey(neighbour, cost);
+                } else {
+                    open.insert(neighbour, cost);
                 }
+                distances[neighbour] = cost;
             }
-            line = reader.readLine();
         }
 
-        reader.close();
+        return distances;
     }
 
-    public void createNodePath(LinkedList<Node> nodePath, Node node) {
-
-        if(node.equals(startNode)) {
-            nodePath.addFirst(node);
-            return;
-        }
+    //with integral costs every key is a whole number and never below the last polled one
+    private static OpenList openList(StateSpace space, int capacity) {
+        return space.hasIntegralCosts() ? new RadixHeap(capacity) : new IndexedMinHeap(capacity);
+    }
 
-        nodePath.addFirst(node);
-        createNodePath(nodePath, node.getParent());
+    /**
+     * Searches an explicit graph in the workspace of the current thread, so repeated
+     * queries only touch the states they reach and allocate nothing but the result.
+     */
+    public SearchResult search(StateGraph graph, int startState, BitSet goalStates) {
+        SearchStats stats = SearchStats.start("UCS");
+        return stats.finish(search(graph, startState, goalStates, stats), keepStats);
     }
 
-    public void runAlgorithm(String filePath) throws IOException {
+    private SearchResult search(StateGraph graph, int startState, BitSet goalStates, SearchStats stats) {
 
-        argumentsInit(filePath);
+        BitSet goalReachable = pruneDeadEnds ? graph.getGoalReachable(goalStates) : null;
+        if (goalReachable != null && !goalReachable.get(startState)) {
+            return SearchResult.notFound(0);
+        }
 
-        String foundSolution = "no";
         int statesVisited = -1; //on start first node will set it to 0
-        int pathLength = 0;
-        double totalCost = 0;
-        Node finalState = null;
-
-        PriorityQueue<Node> open = new PriorityQueue<>();
-        open.add(startNode);
 
-        HashSet<String> closedNodeNames = new HashSet<>();
-
-        while (open.peek() != null) {
-            Node currentNode = open.remove();
-            closedNodeNames.add(currentNode.getName());
+        SearchWorkspace workspace = SearchWorkspace.acquire(graph.getStateCount());
+        OpenList open = workspace.openList(graph.hasIntegralCosts());
+        workspace.reach(startState, 0, -1);
+        open.insert(startState, 0);
+        stats.opened();
+
+        while (!open.isEmpty()) {
+            int currentState = open.poll();
+            workspace.close(currentState);
+            stats.polled();
+            stats.closed++;
             statesVisited++;
 
             //check if currentNode is a goal state
-            if (goalStateNames.contains(currentNode.getName())) {
-                finalState = currentNode;
-                totalCost = currentNode.getCost();
-                foundSolution = "yes";
-                break;
+            if (goalStates.get(currentState)) {
+                return SearchResult.found(statesVisited, workspace.getCost(currentState), workspace.getParents(),
+                        startState, currentState);
             }
 
-            TreeSet<Node> currentNodeNeighboursTemplateSet = allStates.get(currentNode);
-
-            if(currentNodeNeighboursTemplateSet == null)
-                continue;
+            stats.generated += graph.getEdgesEnd(currentState) - graph.getEdgesBegin(currentState);
+            for (int edge = graph.getEdgesBegin(currentState); edge < graph.getEdgesEnd(currentState); edge++) {
 
-            for (Node neighbourTemplate : currentNodeNeighboursTemplateSet) {
-
-                if(closedNodeNames.contains(neighbourTemplate.getName()))
+                int neighbour = graph.getEdgeTarget(edge);
+                if (workspace.isClosed(neighbour) || goalReachable != null && !goalReachable.get(neighbour))
                     continue;
 
-                Node neighbour = new Node(neighbourTemplate.getName(), neighbourTemplate.getCost());
-                neighbour.increaseCost(currentNode.getCost());
-                neighbour.setParent(currentNode);
-                open.add(neighbour);
+                double cost = workspace.getCost(currentState) + graph.getEdgeCost(edge);
+                if (!open.contains(neighbour)) {
+                    open.insert(neighbour, cost);
+                    stats.opened();
+                } else if (cost < workspace.getCost(neighbour)) {
+                    open.decreaseKey(neighbour, cost);
+                } else {
+                    continue;
+                }
+                workspace.reach(neighbour, cost, currentState);
             }
         }
 
-        if(foundSolution.equals("no")) {
-            System.out.println("[FOUND_SOLUTION]: " + foundSolution);
-            return;
-        }
+        return SearchResult.notFound(statesVisited);
+    }
 
-        LinkedList<Node> nodePath = new LinkedList<>();
-        createNodePath(nodePath, finalState);
-        pathLength = nodePath.size();
-
-        System.out.println("# UCS");
-        System.out.println("[FOUND_SOLUTION]: " + foundSolution);
-        System.out.println("[STATES_VISITED]: " + statesVisited);
-        System.out.println("[PATH_LENGTH]: " + pathLength);
-        System.out.println("[TOTAL_COST]: " + totalCost);
-        System.out.print("[PATH]: ");
-
-        for(int i = 0; i < nodePath.size(); i++) {
-            if(i == nodePath.size() - 1) {
-                System.out.print(nodePath.get(i).getName());
-            } else {
-                System.out.print(nodePath.get(i).getName() + " => ");
-            }
+    public SearchResult search(StateSpace space) {
+
+        if (space instanceof StateGraph) {
+            StateGraph graph = (StateGraph) space;
+            return search(graph, graph.getStartState(), graph.getGoalStates());
         }
-        return;
+
+        SearchStats stats = SearchStats.start("UCS");
+        return stats.finish(search(space, stats), keepStats);
     }
 
-    public double runAlgorithmFromState(String filePath, String startNodeName) throws IOException {
+    private SearchResult search(StateSpace space, SearchStats stats) {
+
+        int statesVisited = -1; //on start first node will set it to 0
 
-        argumentsInit(filePath);
+        StateIndex states = StateIndex.of(space);
+        Successors successors = new Successors();
+        int startSlot = states.add(space.getInitialState());
 
-        startNode = new Node(startNodeName, 0);
-        double totalCost = 0;
-        PriorityQueue<Node> open = new PriorityQueue<>();
-        open.add(startNode);
+        int[] parents = new int[states.capacity()];
+        double[] costs = new double[states.capacity()];
+        boolean[] closed = new boolean[states.capacity()];
 
-        HashSet<String> closedNodeNames = new HashSet<>();
+        OpenList open = openList(space, states.capacity());
+        open.insert(startSlot, 0);
+        stats.opened();
 
-        while (open.peek() != null) {
-            Node currentNode = open.remove();
-            closedNodeNames.add(currentNode.getName());
+        while (!open.isEmpty()) {
+            int currentSlot = open.poll();
+            long currentState = states.getState(currentSlot);
+            closed[currentSlot] = true;
+            stats.polled();
+            stats.closed++;
+            statesVisited++;
 
             //check if currentNode is a goal state
-            if (goalStateNames.contains(currentNode.getName())) {
-                totalCost = currentNode.getCost();
-                return totalCost;
+            if (space.isGoal(currentState)) {
+                return SearchResult.found(statesVisited, costs[currentSlot], parents, startSlot, currentSlot, states);
             }
 
-            TreeSet<Node> currentNodeNeighboursTemplateSet = allStates.get(currentNode);
-
-            if(currentNodeNeighboursTemplateSet == null)
-                continue;
-
-            for (Node neighbourTemplate : currentNodeNeighboursTemplateSet) {
+            space.successors(currentState, successors);
+            stats.generated += successors.size();
+            for (int i = 0; i < successors.size(); i++) {
 
-                if(closedNodeNames.contains(neighbourTemplate.getName()))
+                int neighbour = states.add(successors.getState(i));
+                if (neighbour == parents.length) {
+                    int capacity = states.capacity();
+                    parents = Arrays.copyOf(parents, capacity);
+                    costs = Arrays.copyOf(costs, capacity);
+                    closed = Arrays.copyOf(closed, capacity);
+                }
+                if (closed[neighbour])
                     continue;
 
-                Node neighbour = new Node(neighbourTemplate.getName(), neighbourTemplate.getCost());
-                neighbour.increaseCost(currentNode.getCost());
-                neighbour.setParent(currentNode);
-                open.add(neighbour);
+                double cost = costs[currentSlot] + successors.getCost(i);
+                if (!open.contains(neighbour)) {
+                    open.insert(neighbour, cost);
+                    stats.opened();
+                } else if (cost < costs[neighbour]) {
+                    open.decreaseKey(neighbour, cost);
+                } else {
+                    continue;
+                }
+                costs[neighbour] = cost;
+                parents[neighbour] = currentSlot;
             }
         }
 
-        return -1.0;
+        return SearchResult.notFound(statesVisited);
     }
 }